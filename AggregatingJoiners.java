@@ -0,0 +1,213 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Joiners that fold each successful result into a running aggregate as it completes instead of
+ * keeping the subtasks (compare {@code StructuredConcurrencyTest.CustomeTaskScope}, which copies
+ * a {@code CopyOnWriteArrayList} on every add).
+ * <p>
+ * Accumulators are the striped {@code java.util.concurrent.atomic} adders and an atomic-counter
+ * quantile sketch, so completions never take a lock and memory does not grow with the fan-out:
+ * O(1) for the summary and quantiles, O(k) for top-k. As with {@code allSuccessfulOrThrow}, the
+ * first failure cancels the scope and is rethrown from {@code join}.
+ */
+public final class AggregatingJoiners {
+
+    private AggregatingJoiners() {
+    }
+
+    // Count, sum, min, max and mean of metric over the successful results.
+    public static <T> StructuredTaskScope.Joiner<T, Summary> summarizing(ToDoubleFunction<? super T> metric) {
+        return new Summarizing<>(metric);
+    }
+
+    // The k largest results by comparator, largest first.
+    public static <T> StructuredTaskScope.Joiner<T, List<T>> topK(int k, Comparator<? super T> comparator) {
+        return new TopK<>(k, comparator);
+    }
+
+    // Quantiles of metric within 1% relative error (see QuantileSketch); query with quantile(q).
+    public static <T> StructuredTaskScope.Joiner<T, QuantileSketch> quantiles(ToDoubleFunction<? super T> metric) {
+        return new Quantiles<>(metric);
+    }
+
+    public record Summary(long count, double sum, double min, double max) {
+
+        // NaN when nothing succeeded
+        public double mean() {
+            return count == 0 ? Double.NaN : sum / count;
+        }
+    }
+
+    // Failure handling shared by every aggregating joiner.
+    abstract static class Aggregating<T, R> implements StructuredTaskScope.Joiner<T, R> {
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        abstract void accept(T result);
+
+        abstract R aggregate();
+
+        @Override
+        public boolean onComplete(StructuredTaskScope.Subtask<? extends T> subtask) {
+            switch (subtask.state()) {
+                case SUCCESS -> accept(subtask.get());
+                case FAILED -> {
+                    failure.compareAndSet(null, subtask.exception());
+                    return true;
+                }
+                case UNAVAILABLE -> {
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public R result() throws Throwable {
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+            return aggregate();
+        }
+    }
+
+    static final class Summarizing<T> extends Aggregating<T, Summary> {
+        private final ToDoubleFunction<? super T> metric;
+        private final LongAdder count = new LongAdder();
+        private final DoubleAdder sum = new DoubleAdder();
+        private final DoubleAccumulator min = new DoubleAccumulator(Math::min, Double.POSITIVE_INFINITY);
+        private final DoubleAccumulator max = new DoubleAccumulator(Math::max, Double.NEGATIVE_INFINITY);
+
+        Summarizing(ToDoubleFunction<? super T> metric) {
+            this.metric = metric;
+        }
+
+        @Override
+        void accept(T result) {
+            double value = metric.applyAsDouble(result);
+            count.increment();
+            sum.add(value);
+            min.accumulate(value);
+            max.accumulate(value);
+        }
+
+        @Override
+        Summary aggregate() {
+            long n = count.sum();
+            return n == 0 ? new Summary(0, 0, Double.NaN, Double.NaN) : new Summary(n, sum.sum(), min.get(), max.get());
+        }
+    }
+
+    static final class TopK<T> extends Aggregating<T, List<T>> {
+        // Sequence numbers keep equal results apart in the set.
+        private record Entry<T>(T value, long sequence) {
+        }
+
+        private final int k;
+        private final ConcurrentSkipListSet<Entry<T>> best;
+        private final AtomicLong sequence = new AtomicLong();
+        private final AtomicInteger size = new AtomicInteger();
+
+        TopK(int k, Comparator<? super T> comparator) {
+            if (k <= 0) {
+                throw new IllegalArgumentException("k must be positive!");
+            }
+            this.k = k;
+            Comparator<Entry<T>> byValue = (a, b) -> comparator.compare(a.value(), b.value());
+            this.best = new ConcurrentSkipListSet<>(byValue.thenComparingLong(Entry::sequence));
+        }
+
+        @Override
+        void accept(T result) {
+            Entry<T> entry = new Entry<>(result, sequence.getAndIncrement());
+            if (size.get() >= k) {
+                // Iterator instead of first(): the set may be emptied by a concurrent trim.
+                Iterator<Entry<T>> smallest = best.iterator();
+                if (smallest.hasNext() && best.comparator().compare(entry, smallest.next()) <= 0) {
+                    return;
+                }
+            }
+            best.add(entry);
+            // The set holds at most k plus the adds in flight; trim from the smallest end.
+            if (size.incrementAndGet() > k && best.pollFirst() != null) {
+                size.decrementAndGet();
+            }
+        }
+
+        @Override
+        List<T> aggregate() {
+            List<T> top = new ArrayList<>(k);
+            for (Entry<T> entry : best.descendingSet()) {
+                if (top.size() == k) {
+                    break;
+                }
+                top.add(entry.value());
+            }
+            return top;
+        }
+    }
+
+    static final class Quantiles<T> extends Aggregating<T, QuantileSketch> {
+        private final ToDoubleFunction<? super T> metric;
+        private final ConcurrentQuantileSketch sketch = new ConcurrentQuantileSketch();
+
+        Quantiles(ToDoubleFunction<? super T> metric) {
+            this.metric = metric;
+        }
+
+        @Override
+        void accept(T result) {
+            sketch.add(metric.applyAsDouble(result));
+        }
+
+        @Override
+        QuantileSketch aggregate() {
+            return sketch.snapshot();
+        }
+    }
+
+    record Reading(String station, double temperature) {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int stations = 10_000;
+
+        try (var scope = StructuredTaskScope.open(summarizing(Reading::temperature))) {
+            for (int i = 0; i < stations; i++) {
+                scope.fork(AggregatingJoiners::read);
+            }
+            System.out.println(scope.join());
+        }
+
+        try (var scope = StructuredTaskScope.open(topK(3, Comparator.comparingDouble(Reading::temperature)))) {
+            for (int i = 0; i < stations; i++) {
+                scope.fork(AggregatingJoiners::read);
+            }
+            System.out.println("Hottest: " + scope.join());
+        }
+
+        try (var scope = StructuredTaskScope.open(quantiles(Reading::temperature))) {
+            for (int i = 0; i < stations; i++) {
+                scope.fork(AggregatingJoiners::read);
+            }
+            QuantileSketch sketch = scope.join();
+            System.out.printf("p50 %.2f  p99 %.2f%n", sketch.quantile(0.5), sketch.quantile(0.99));
+        }
+    }
+
+    private static Reading read() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return new Reading("station-" + random.nextInt(1_000), 15 + 8 * random.nextGaussian());
+    }
+}
@@ -0,0 +1,221 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordingFile;
+import org.javase.FastHashMap;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Runs one named hot path in a loop and reports what it allocates per operation.
+ * <p>
+ * Bytes per operation are exact: they come from the thread's allocation counter
+ * ({@code com.sun.management.ThreadMXBean}) around the measured loop. Types and sites come from
+ * {@code jdk.ObjectAllocationSample} JFR events recorded during the same loop; their weights are
+ * scaled to that exact total, so each line reads as "this type / this site costs N bytes per op".
+ * <p>
+ * A workload that hands work to other threads, like sse.broadcast whose events are sent by each
+ * subscriber's virtual thread, is waited on until that work is done, and is measured over all
+ * threads: the JVM-wide allocation counter, and samples from this thread and any virtual thread.
+ * <pre>
+ *   java AllocationProfiler                       lists the workloads
+ *   java AllocationProfiler mathExpression.chain  1000000 operations after a 200000 warmup
+ *   java AllocationProfiler sse.broadcast 50000
+ * </pre>
+ */
+public class AllocationProfiler {
+    private static final int TOP = 10;
+
+    // Each supplier builds fresh state and returns the operation to repeat.
+    private static final Map<String, Supplier<Workload>> WORKLOADS = new LinkedHashMap<>();
+
+    // The operation to repeat. One that leaves work behind on other threads says so and waits for it in settle().
+    interface Workload extends Runnable {
+        default boolean crossesThreads() {
+            return false;
+        }
+
+        default void settle() {
+        }
+    }
+
+    static {
+        WORKLOADS.put("fastHashMap.put", () -> {
+            FastHashMap<Integer, Integer> map = new FastHashMap<>();
+            int[] next = {0};
+            return () -> {
+                int key = next[0]++ & 0xFFFF;
+                map.put(key, key);
+            };
+        });
+        WORKLOADS.put("fastHashMap.get", () -> {
+            FastHashMap<Integer, Integer> map = new FastHashMap<>();
+            for (int i = 0; i < 65_536; i++) {
+                map.put(i, i);
+            }
+            int[] next = {0};
+            return () -> map.get(next[0]++ & 0xFFFF);
+        });
+        WORKLOADS.put("mathExpression.chain", () -> {
+            double[] x = {1};
+            return () -> new MathExpression.Builder(x[0]++).add(3.5).multiply(1.07).max(10).sqrt().format(2).build().get();
+        });
+        WORKLOADS.put("fixedPoint.chain", () -> {
+            double[] x = {1};
+            return () -> new FixedPointExpression.Builder(x[0]++, 2, RoundingMode.HALF_EVEN).add(3.5).multiply(1.07).build().get();
+        });
+        WORKLOADS.put("formula.evaluate", () -> {
+            MathFormula formula = new MathFormula.Builder("x").add(3.5).multiply(1.07).max(10).sqrt().build();
+            double[] x = {1};
+            return () -> formula.evaluate(x[0]++);
+        });
+        WORKLOADS.put("sse.broadcast", () -> {
+            ObjectMapper mapper = new ObjectMapper();
+            RaceRoom room = BenchMark.SseBroadcastBenchMark.newRoom(mapper, Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().daemon().factory()));
+            for (int i = 0; i < 100; i++) {
+                room.subscribe("spectator-" + i, new BenchMark.SseBroadcastBenchMark.NullSseEmitter(mapper), null);
+            }
+            int[] next = {0};
+            return new Workload() {
+                @Override
+                public void run() {
+                    room.updateProgress("player-" + (next[0] % 16), next[0]++ % 100);
+                }
+
+                @Override
+                public boolean crossesThreads() {
+                    return true;
+                }
+
+                // Sending is done once no subscriber has sent anything for 50 ms.
+                @Override
+                public void settle() {
+                    long quiet = TimeUnit.MILLISECONDS.toNanos(50);
+                    while (room.clients().stream().anyMatch(client -> client.idleNanos(System.nanoTime()) < quiet)) {
+                        LockSupport.parkNanos(quiet / 5);
+                    }
+                }
+            };
+        });
+    }
+
+    record Line(String name, long weight) {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0 || !WORKLOADS.containsKey(args[0])) {
+            System.out.println("Usage: AllocationProfiler <workload> [operations]");
+            System.out.println("Workloads: " + String.join(", ", WORKLOADS.keySet()));
+            return;
+        }
+        String name = args[0];
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        Workload operation = WORKLOADS.get(name).get();
+        boolean allThreads = operation.crossesThreads();
+
+        for (int i = 0; i < Math.max(operations / 5, 10_000); i++) {
+            operation.run();
+        }
+        operation.settle();
+
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Path file = Files.createTempFile("allocations", ".jfr");
+        long allocated;
+        try (Recording recording = new Recording()) {
+            recording.enable("jdk.ObjectAllocationSample").with("throttle", "10000/s").withStackTrace();
+            recording.start();
+
+            long before = allThreads ? threads.getTotalThreadAllocatedBytes() : threads.getCurrentThreadAllocatedBytes();
+            for (int i = 0; i < operations; i++) {
+                operation.run();
+            }
+            operation.settle();
+            allocated = (allThreads ? threads.getTotalThreadAllocatedBytes() : threads.getCurrentThreadAllocatedBytes()) - before;
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        Map<String, Long> byType = new HashMap<>();
+        Map<String, Long> bySite = new HashMap<>();
+        long sampledWeight = 0;
+        for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+            if (!event.getEventType().getName().equals("jdk.ObjectAllocationSample")
+                    || !measured(event.getThread("eventThread"), allThreads)) {
+                continue;
+            }
+            long weight = event.getLong("weight");
+            sampledWeight += weight;
+            byType.merge(event.getClass("objectClass").getName(), weight, Long::sum);
+            bySite.merge(site(event), weight, Long::sum);
+        }
+        Files.deleteIfExists(file);
+
+        System.out.printf("%s: %,d operations, %,d bytes allocated, %.1f bytes/op%n",
+                name, operations, allocated, (double) allocated / operations);
+        if (sampledWeight == 0) {
+            System.out.println("No allocation samples recorded (the path may be allocation-free).");
+            return;
+        }
+        // JFR weights are estimates; scale them so the per-op figures add up to the exact total.
+        double bytesPerWeight = (double) allocated / sampledWeight / operations;
+        print("Allocated types", byType, bytesPerWeight);
+        print("Allocation sites", bySite, bytesPerWeight);
+    }
+
+    // This thread's samples, plus those of virtual threads when the work crosses threads;
+    // JFR's own platform threads are left out.
+    private static boolean measured(RecordedThread thread, boolean allThreads) {
+        if (thread == null) {
+            return false;
+        }
+        return thread.getJavaThreadId() == Thread.currentThread().threadId() || (allThreads && thread.isVirtual());
+    }
+
+    // The allocating frame, plus the first frame outside the JDK when they differ.
+    private static String site(RecordedEvent event) {
+        if (event.getStackTrace() == null || event.getStackTrace().getFrames().isEmpty()) {
+            return "<no stack>";
+        }
+        List<RecordedFrame> frames = event.getStackTrace().getFrames();
+        String top = frame(frames.getFirst());
+        for (RecordedFrame frame : frames) {
+            String type = frame.getMethod().getType().getName();
+            if (!type.startsWith("java.") && !type.startsWith("jdk.") && !type.startsWith("sun.")) {
+                String caller = frame(frame);
+                return caller.equals(top) ? top : top + "  <-  " + caller;
+            }
+        }
+        return top;
+    }
+
+    private static String frame(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+    }
+
+    private static void print(String title, Map<String, Long> weights, double bytesPerWeight) {
+        System.out.println();
+        System.out.println(title + " (bytes/op):");
+        weights.entrySet().stream()
+                .map(entry -> new Line(entry.getKey(), entry.getValue()))
+                .sorted(Comparator.comparingLong(Line::weight).reversed())
+                .limit(TOP)
+                .forEach(line -> System.out.printf("  %10.1f  %s%n", line.weight() * bytesPerWeight, line.name()));
+    }
+}
@@ -1,52 +1,390 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.javase.FastHashMap;
 import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.profile.StackProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.StructuredTaskScope;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
-import org.openjdk.jmh.runner.Runner;
-import org.openjdk.jmh.runner.RunnerException;
-import org.openjdk.jmh.runner.options.Options;
-import org.openjdk.jmh.runner.options.OptionsBuilder;
 
+// Every benchmark is a public static nested class: JMH's annotation processor rejects non-public ones.
+// jmh/pom.xml builds them, with the sources they measure, into jmh/target/benchmarks.jar (as package "bench").
+public class BenchMark {
 
-@BenchmarkMode(Mode.AverageTime) // Measure average execution time
-@OutputTimeUnit(TimeUnit.MILLISECONDS) // Results in milliseconds
-@State(Scope.Thread) // Each thread gets its own instance
-class MyBenchMark {
+    @BenchmarkMode(Mode.AverageTime) // Measure average execution time
+    @OutputTimeUnit(TimeUnit.MILLISECONDS) // Results in milliseconds
+    @State(Scope.Thread) // Each thread gets its own instance
+    public static class MyBenchMark {
 
-    @Benchmark
-    public int computeSum() {
-        int sum = 0;
-        for (int i = 0; i < 100_000_000; i++) {
-            sum += i;
+        @Benchmark
+        public int computeSum() {
+            int sum = 0;
+            for (int i = 0; i < 100_000_000; i++) {
+                sum += i;
+            }
+            return sum;
         }
-        return sum;
     }
-}
 
 
-class Main {
-    public static void main(String[] args) throws RunnerException {
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @State(Scope.Thread)
+    public static class FastHashMapBenchMark {
+        @Param({"1000", "100000"})
+        public int size;
+
+        private FastHashMap<String, Integer> map;
+        private String[] keys;
+        private int index;
+
+        @Setup
+        public void setup() {
+            map = new FastHashMap<>();
+            keys = new String[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = "key-" + i;
+                map.put(keys[i], i);
+            }
+        }
+
+        private String nextKey() {
+            index = index + 1 == size ? 0 : index + 1;
+            return keys[index];
+        }
+
+        @Benchmark
+        public Integer get() {
+            return map.get(nextKey());
+        }
+
+        @Benchmark
+        public void putExisting() {
+            map.put(nextKey(), index);
+        }
+
+        @Benchmark
+        public void removeAndPut() {
+            String key = nextKey();
+            map.remove(key);
+            map.put(key, index);
+        }
+    }
 
-        Options opt = new OptionsBuilder()
-                .include(MyBenchMark.class.getSimpleName()) // Select benchmark class
-                .forks(1) // Number of JVM forks
-                .build();
 
-        new Runner(opt).run();
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @State(Scope.Thread)
+    public static class MathExpressionBenchMark {
+        private final MathFormula formula = new MathFormula.Builder("x")
+                .multiply(1.07).add(3.5).sqrt().multiply("y").build();
+        private double x = 42;
+
+        @Benchmark
+        public double builderChain() {
+            x += 1;
+            return new MathExpression.Builder(x).multiply(1.07).add(3.5).sqrt().multiply(2).format(2).build().get();
+        }
+
+        @Benchmark
+        public double builderChainApproximate() {
+            x += 1;
+            return new MathExpression.Builder(x).approximate(true).log().exp().sin().build().get();
+        }
+
+        @Benchmark
+        public double fixedPointChain() {
+            x += 1;
+            return new FixedPointExpression.Builder(x, 2, RoundingMode.HALF_EVEN).multiply(1.07).add(3.5).divide(3).build().get();
+        }
+
+        @Benchmark
+        public double compiledFormula() {
+            x += 1;
+            return formula.evaluate(x, 2);
+        }
     }
-}
 
-/*
 
-        <dependency>
-            <groupId>org.openjdk.jmh</groupId>
-            <artifactId>jmh-core</artifactId>
-            <version>1.37</version>
-        </dependency>
-        <dependency>
-            <groupId>org.openjdk.jmh</groupId>
-            <artifactId>jmh-generator-annprocess</artifactId>
-            <version>1.37</version>
-        </dependency>
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @State(Scope.Benchmark)
+    public static class StructuredConcurrencyBenchMark {
+        @Param({"10", "100", "1000"})
+        public int fanOut;
+
+        @Benchmark
+        public Object anySuccessful() throws Exception {
+            try (var scope = StructuredTaskScope.open(StructuredTaskScope.Joiner.<Integer>anySuccessfulResultOrThrow())) {
+                for (int i = 0; i < fanOut; i++) {
+                    int value = i;
+                    scope.fork(() -> value);
+                }
+                return scope.join();
+            }
+        }
+
+        @Benchmark
+        public Object allSuccessful() throws Exception {
+            try (var scope = StructuredTaskScope.open(StructuredTaskScope.Joiner.<Integer>allSuccessfulOrThrow())) {
+                for (int i = 0; i < fanOut; i++) {
+                    int value = i;
+                    scope.fork(() -> value);
+                }
+                return scope.join();
+            }
+        }
+
+        @Benchmark
+        public Object targetSuccess() throws Exception {
+            try (var scope = StructuredTaskScope.open(new Java25StructuredTaskScope.TargetSuccessJoiner<Integer>(fanOut / 2))) {
+                for (int i = 0; i < fanOut; i++) {
+                    int value = i;
+                    scope.fork(() -> value);
+                }
+                return scope.join();
+            }
+        }
+    }
+
+
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @State(Scope.Benchmark)
+    @Threads(Threads.MAX)
+    public static class SafeResourcePoolBenchMark {
+        @Param({"1", "4", "64"})
+        public int permits;
+
+        private SafeResourcePool pool;
+
+        @Setup
+        public void setup() {
+            pool = new SafeResourcePool("benchmark", permits);
+        }
+
+        @Benchmark
+        public Integer useResource() throws Exception {
+            return pool.useResource(() -> {
+                Blackhole.consumeCPU(200);
+                return permits;
+            });
+        }
+    }
+
+
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @State(Scope.Thread)
+    public static class SseBroadcastBenchMark {
+        @Param({"10", "1000"})
+        public int subscribers;
+
+        private ScheduledExecutorService worker;
+        private RaceRoom room;
+        private int progress;
+
+        @Setup
+        public void setup() {
+            ObjectMapper mapper = new ObjectMapper();
+            worker = Executors.newSingleThreadScheduledExecutor();
+            room = newRoom(mapper, worker);
+            for (int i = 0; i < subscribers; i++) {
+                room.subscribe("player-" + i, new NullSseEmitter(mapper), null);
+            }
+        }
+
+        @TearDown
+        public void tearDown() {
+            room.close();
+            worker.shutdownNow();
+        }
+
+        @Benchmark
+        public void updateProgress() {
+            progress = (progress + 1) % 100;
+            room.updateProgress("player-" + (progress % subscribers), progress);
+        }
+
+        // One race as the controller would set it up, except that batch size 1 flushes every update
+        // on the calling thread: each update is encoded and queued for every subscriber before it
+        // returns. Sending runs on the subscribers' own threads, so updateProgress does not time it.
+        static RaceRoom newRoom(ObjectMapper mapper, ScheduledExecutorService worker) {
+            return new RaceRoom("benchmark", mapper, worker,
+                    new RaceRoom.Settings(Duration.ofMillis(50), 1, 16, SseSubscriber.OverflowPolicy.CONFLATE, 1024));
+        }
+
+        // Does what the HTTP message converters would do with each event, then discards the bytes.
+        static final class NullSseEmitter extends SseEmitter {
+            private final ObjectMapper mapper;
+            private long bytesWritten;
+
+            NullSseEmitter(ObjectMapper mapper) {
+                super(Long.MAX_VALUE);
+                this.mapper = mapper;
+            }
+
+            @Override
+            public synchronized void send(Set<ResponseBodyEmitter.DataWithMediaType> items) throws IOException {
+                for (ResponseBodyEmitter.DataWithMediaType item : items) {
+                    Object data = item.getData();
+                    if (data instanceof byte[] bytes) {
+                        bytesWritten += bytes.length;
+                    } else if (data instanceof String text) {
+                        bytesWritten += text.length();
+                    } else {
+                        bytesWritten += mapper.writeValueAsBytes(data).length;
+                    }
+                }
+            }
+        }
+    }
+
+
+    // ApproxMath against Math.* over the same pre-generated inputs; run with -prof gc to confirm no allocation.
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @State(Scope.Thread)
+    public static class ApproxMathBenchMark {
+        private static final int SIZE = 1024;
+        private final double[] angles = new double[SIZE];
+        private final double[] exponents = new double[SIZE];
+        private final double[] positives = new double[SIZE];
+        private int index;
+
+        @Setup
+        public void setup() {
+            SplittableRandom random = new SplittableRandom(7);
+            for (int i = 0; i < SIZE; i++) {
+                angles[i] = random.nextDouble(-100, 100);
+                exponents[i] = random.nextDouble(-50, 50);
+                positives[i] = random.nextDouble(1e-6, 1e6);
+            }
+        }
+
+        private int next() {
+            return index = (index + 1) & (SIZE - 1);
+        }
+
+        @Benchmark
+        public double mathSin() {
+            return Math.sin(angles[next()]);
+        }
+
+        @Benchmark
+        public double approxSin() {
+            return ApproxMath.sin(angles[next()]);
+        }
+
+        @Benchmark
+        public double mathCos() {
+            return Math.cos(angles[next()]);
+        }
+
+        @Benchmark
+        public double approxCos() {
+            return ApproxMath.cos(angles[next()]);
+        }
+
+        @Benchmark
+        public double mathTan() {
+            return Math.tan(angles[next()]);
+        }
+
+        @Benchmark
+        public double approxTan() {
+            return ApproxMath.tan(angles[next()]);
+        }
+
+        @Benchmark
+        public double mathExp() {
+            return Math.exp(exponents[next()]);
+        }
 
-*/
+        @Benchmark
+        public double approxExp() {
+            return ApproxMath.exp(exponents[next()]);
+        }
+
+        @Benchmark
+        public double mathLog() {
+            return Math.log(positives[next()]);
+        }
+
+        @Benchmark
+        public double approxLog() {
+            return ApproxMath.log(positives[next()]);
+        }
+
+        @Benchmark
+        public double mathPow() {
+            int i = next();
+            return Math.pow(positives[i], angles[i] / 10);
+        }
+
+        @Benchmark
+        public double approxPow() {
+            int i = next();
+            return ApproxMath.pow(positives[i], angles[i] / 10);
+        }
+    }
+
+
+    /*
+     Runs every benchmark in this file (or the ones matching the given regexes) with the GC and stack
+     profilers attached and writes machine-readable results to jmh-result.json. All standard JMH flags
+     work, so a subsystem and its parameters can be selected from the command line:
+
+        java --enable-preview -jar jmh/target/benchmarks.jar FastHashMap -p size=100000
+        java --enable-preview -jar jmh/target/benchmarks.jar "MathExpression|ApproxMath" -rff math.json
+        java --enable-preview -jar jmh/target/benchmarks.jar SseBroadcast -p subscribers=1000 -f 3
+
+     ThreadScalingBenchmark sweeps up to 100,000 threads and takes hours, so it only runs when named:
+
+        java --enable-preview -jar jmh/target/benchmarks.jar VirtualThreadScaling -p threads=1000
+
+     Build the jar with "mvn -f jmh/pom.xml package" on JDK 25. The same jar also runs the other tools:
+
+        java --enable-preview -cp jmh/target/benchmarks.jar bench.AllocationProfiler
+        java -cp jmh/target/benchmarks.jar bench.BenchmarkRegressionGate baseline.json jmh-result.json
+    */
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .addProfiler(StackProfiler.class);
+
+        if (commandLine.getIncludes().isEmpty()) {
+            options.include(Pattern.quote(BenchMark.class.getName() + "."));
+        }
+        if (!commandLine.getForkCount().hasValue()) {
+            options.forks(1);
+        }
+        if (!commandLine.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+        if (!commandLine.getResult().hasValue()) {
+            options.result("jmh-result.json");
+        }
+
+        new Runner(options.build()).run();
+    }
+}
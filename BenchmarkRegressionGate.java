@@ -0,0 +1,396 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Compares a JMH JSON result (from BenchMark's main) with a committed baseline and fails on regressions.
+ * <p>
+ * Every benchmark/parameter combination present in both files is compared on its raw iteration
+ * samples: the median change must exceed the threshold in the slower direction (lower is better for
+ * avgt/sample/ss, higher for thrpt) AND a one-sided Mann-Whitney U test must reject "no slowdown"
+ * at the given alpha. Requiring both keeps noise from failing the build and keeps tiny but real
+ * changes from failing it either. Exits with status 1 when anything regressed. Sample-mode results
+ * are compared on every sampled operation, expanded from JMH's (value, count) histogram.
+ * <pre>
+ *   java BenchmarkRegressionGate benchmarks/baseline.json jmh-result.json \
+ *        --threshold 5 --alpha 0.01 --threshold-for "FastHashMap.*=3" --threshold-for "Sse.*=10"
+ * </pre>
+ * Refresh the baseline by committing a jmh-result.json produced on the reference machine.
+ */
+public class BenchmarkRegressionGate {
+
+    record Sample(String key, String mode, double[] raw) {
+
+        boolean higherIsBetter() {
+            return mode.equals("thrpt");
+        }
+    }
+
+    record Comparison(String key, double baseline, double current, double change, double pValue, double threshold,
+                      boolean regression) {
+    }
+
+    private final double defaultThreshold;
+    private final double alpha;
+    private final Map<Pattern, Double> thresholds;
+
+    public BenchmarkRegressionGate(double defaultThreshold, double alpha, Map<Pattern, Double> thresholds) {
+        this.defaultThreshold = defaultThreshold;
+        this.alpha = alpha;
+        this.thresholds = thresholds;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            usage();
+        }
+
+        double threshold = 5;
+        double alpha = 0.01;
+        Map<Pattern, Double> thresholds = new LinkedHashMap<>();
+        for (int i = 2; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                System.err.println("Missing value for " + args[i]);
+                usage();
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--threshold" -> threshold = Double.parseDouble(value);
+                case "--alpha" -> alpha = Double.parseDouble(value);
+                case "--threshold-for" -> {
+                    int split = value.lastIndexOf('=');
+                    if (split < 0) {
+                        System.err.println("Expected regex=percent for --threshold-for but got " + value);
+                        usage();
+                    }
+                    thresholds.put(Pattern.compile(value.substring(0, split)), Double.parseDouble(value.substring(split + 1)));
+                }
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        Map<String, Sample> baseline = load(Path.of(args[0]));
+        Map<String, Sample> current = load(Path.of(args[1]));
+        List<Comparison> comparisons = new BenchmarkRegressionGate(threshold, alpha, thresholds).compare(baseline, current);
+
+        int regressions = 0;
+        System.out.printf("%-70s %14s %14s %9s %9s%n", "Benchmark", "Baseline", "Current", "Change", "p");
+        for (Comparison comparison : comparisons) {
+            System.out.printf("%-70s %14.4f %14.4f %+8.2f%% %9.4f %s%n", comparison.key(), comparison.baseline(),
+                    comparison.current(), comparison.change(), comparison.pValue(),
+                    comparison.regression() ? "REGRESSION (> " + comparison.threshold() + "%)" : "");
+            if (comparison.regression()) {
+                regressions++;
+            }
+        }
+        for (String key : baseline.keySet()) {
+            if (!current.containsKey(key)) {
+                System.out.println("WARNING: " + key + " is in the baseline but was not run");
+            }
+        }
+
+        if (regressions > 0) {
+            System.out.println(regressions + " benchmark(s) regressed");
+            System.exit(1);
+        }
+        System.out.println("No regressions");
+    }
+
+    private static void usage() {
+        System.err.println("Usage: BenchmarkRegressionGate <baseline.json> <current.json> "
+                + "[--threshold percent] [--alpha p] [--threshold-for regex=percent]...");
+        System.exit(2);
+    }
+
+    public List<Comparison> compare(Map<String, Sample> baseline, Map<String, Sample> current) {
+        List<Comparison> comparisons = new ArrayList<>();
+        for (Sample now : current.values()) {
+            Sample before = baseline.get(now.key());
+            if (before == null) {
+                continue;
+            }
+            double baseMedian = median(before.raw());
+            double currentMedian = median(now.raw());
+            // Positive change always means slower, whatever the mode.
+            double difference = now.higherIsBetter() ? baseMedian - currentMedian : currentMedian - baseMedian;
+            // Any slowdown from a zero baseline is an unbounded change, not NaN or a division by zero
+            double change = baseMedian == 0
+                    ? (difference == 0 ? 0 : Math.copySign(Double.POSITIVE_INFINITY, difference))
+                    : difference / Math.abs(baseMedian) * 100;
+            double pValue = now.higherIsBetter()
+                    ? mannWhitneyGreater(before.raw(), now.raw())
+                    : mannWhitneyGreater(now.raw(), before.raw());
+            double threshold = thresholdFor(now.key());
+            comparisons.add(new Comparison(now.key(), baseMedian, currentMedian, change, pValue, threshold,
+                    change > threshold && pValue < alpha));
+        }
+        return comparisons;
+    }
+
+    private double thresholdFor(String key) {
+        for (Map.Entry<Pattern, Double> entry : thresholds.entrySet()) {
+            if (entry.getKey().matcher(key).matches()) {
+                return entry.getValue();
+            }
+        }
+        return defaultThreshold;
+    }
+
+    // One-sided p-value for "x tends to be greater than y", normal approximation with tie correction.
+    static double mannWhitneyGreater(double[] x, double[] y) {
+        int n1 = x.length;
+        int n2 = y.length;
+        if (n1 == 0 || n2 == 0) {
+            return 1;
+        }
+
+        // Walk both sorted samples together; each run of equal values shares its average rank.
+        double[] xs = x.clone();
+        double[] ys = y.clone();
+        Arrays.sort(xs);
+        Arrays.sort(ys);
+        double rankSumX = 0;
+        double tieCorrection = 0;
+        long ranked = 0;
+        for (int i = 0, j = 0; i < n1 || j < n2; ) {
+            // Double.compare, not ==, so NaNs (sorted last) form a run too
+            double value = j == n2 || (i < n1 && Double.compare(xs[i], ys[j]) <= 0) ? xs[i] : ys[j];
+            int inX = 0;
+            while (i < n1 && Double.compare(xs[i], value) == 0) {
+                i++;
+                inX++;
+            }
+            int inY = 0;
+            while (j < n2 && Double.compare(ys[j], value) == 0) {
+                j++;
+                inY++;
+            }
+            double ties = inX + inY;
+            rankSumX += inX * (ranked + (ties + 1) / 2);
+            tieCorrection += ties * ties * ties - ties;
+            ranked += inX + inY;
+        }
+
+        double u = rankSumX - n1 * (n1 + 1.0) / 2;
+        double n = n1 + n2;
+        double mean = n1 * (double) n2 / 2;
+        double variance = n1 * (double) n2 / 12 * ((n + 1) - tieCorrection / (n * (n - 1)));
+        if (variance <= 0) {
+            return 1;
+        }
+        double z = (u - mean - 0.5) / Math.sqrt(variance);
+        return 1 - normalCdf(z);
+    }
+
+    // Abramowitz-Stegun 7.1.26 approximation of erf, good to 1.5e-7.
+    private static double normalCdf(double z) {
+        double x = Math.abs(z) / Math.sqrt(2);
+        double t = 1 / (1 + 0.3275911 * x);
+        double erf = 1 - t * (0.254829592 + t * (-0.284496736 + t * (1.421413741 + t * (-1.453152027 + t * 1.061405429))))
+                * Math.exp(-x * x);
+        return z >= 0 ? (1 + erf) / 2 : (1 - erf) / 2;
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<String, Sample> load(Path file) throws IOException {
+        Map<String, Sample> samples = new LinkedHashMap<>();
+        for (Object element : (List<Object>) new JsonReader(Files.readString(file)).read()) {
+            Map<String, Object> run = (Map<String, Object>) element;
+            Map<String, Object> metric = (Map<String, Object>) run.get("primaryMetric");
+
+            StringBuilder key = new StringBuilder((String) run.get("benchmark"));
+            Object params = run.get("params");
+            if (params != null) {
+                key.append(new TreeMap<>((Map<String, Object>) params));
+            }
+
+            samples.put(key.toString(), new Sample(key.toString(), (String) run.get("mode"), rawSamples(key, metric)));
+        }
+        return samples;
+    }
+
+    // One value per iteration, or for sample mode every sampled operation: JMH then writes
+    // rawDataHistogram instead, forks of iterations of [value, count] pairs.
+    @SuppressWarnings("unchecked")
+    private static double[] rawSamples(CharSequence key, Map<String, Object> metric) {
+        List<Object> forks = (List<Object>) metric.get("rawData");
+        if (forks != null) {
+            List<Double> raw = new ArrayList<>();
+            for (Object fork : forks) {
+                for (Object iteration : (List<Object>) fork) {
+                    raw.add(number(iteration));
+                }
+            }
+            return raw.stream().mapToDouble(Double::doubleValue).toArray();
+        }
+
+        List<Object> histograms = (List<Object>) metric.get("rawDataHistogram");
+        if (histograms == null) {
+            throw new IllegalArgumentException("No rawData or rawDataHistogram for " + key + "!");
+        }
+        long total = 0;
+        for (Object fork : histograms) {
+            for (Object iteration : (List<Object>) fork) {
+                for (Object pair : (List<Object>) iteration) {
+                    total += (long) number(((List<Object>) pair).get(1));
+                }
+            }
+        }
+        if (total > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many samples (" + total + ") for " + key + "!");
+        }
+        double[] raw = new double[(int) total];
+        int next = 0;
+        for (Object fork : histograms) {
+            for (Object iteration : (List<Object>) fork) {
+                for (Object pair : (List<Object>) iteration) {
+                    List<Object> bucket = (List<Object>) pair;
+                    int count = (int) number(bucket.get(1));
+                    Arrays.fill(raw, next, next + count, number(bucket.get(0)));
+                    next += count;
+                }
+            }
+        }
+        return raw;
+    }
+
+    // JMH writes NaN and infinities as strings.
+    private static double number(Object value) {
+        return value instanceof Number n ? n.doubleValue() : Double.parseDouble((String) value);
+    }
+
+    // Just enough JSON for JMH result files: objects, arrays, strings, numbers, booleans and null.
+    static final class JsonReader {
+        private final String text;
+        private int position;
+
+        JsonReader(String text) {
+            this.text = text;
+        }
+
+        Object read() {
+            skipWhitespace();
+            char c = text.charAt(position);
+            return switch (c) {
+                case '{' -> readObject();
+                case '[' -> readArray();
+                case '"' -> readString();
+                case 't', 'f', 'n' -> readLiteral();
+                default -> readNumber();
+            };
+        }
+
+        private Map<String, Object> readObject() {
+            Map<String, Object> object = new LinkedHashMap<>();
+            position++;
+            skipWhitespace();
+            if (text.charAt(position) == '}') {
+                position++;
+                return object;
+            }
+            while (true) {
+                skipWhitespace();
+                String name = readString();
+                skipWhitespace();
+                expect(':');
+                object.put(name, read());
+                skipWhitespace();
+                if (text.charAt(position++) == '}') {
+                    return object;
+                }
+            }
+        }
+
+        private List<Object> readArray() {
+            List<Object> array = new ArrayList<>();
+            position++;
+            skipWhitespace();
+            if (text.charAt(position) == ']') {
+                position++;
+                return array;
+            }
+            while (true) {
+                array.add(read());
+                skipWhitespace();
+                if (text.charAt(position++) == ']') {
+                    return array;
+                }
+            }
+        }
+
+        private String readString() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c == '\\') {
+                    char escaped = text.charAt(position++);
+                    switch (escaped) {
+                        case 'n' -> value.append('\n');
+                        case 't' -> value.append('\t');
+                        case 'r' -> value.append('\r');
+                        case 'b' -> value.append('\b');
+                        case 'f' -> value.append('\f');
+                        case 'u' -> {
+                            value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                            position += 4;
+                        }
+                        default -> value.append(escaped);
+                    }
+                } else {
+                    value.append(c);
+                }
+            }
+        }
+
+        private Object readLiteral() {
+            for (String literal : new String[]{"true", "false", "null"}) {
+                if (text.startsWith(literal, position)) {
+                    position += literal.length();
+                    return literal.equals("null") ? null : Boolean.valueOf(literal);
+                }
+            }
+            throw new IllegalArgumentException("Unexpected token at " + position);
+        }
+
+        private Double readNumber() {
+            int start = position;
+            while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0) {
+                position++;
+            }
+            if (start == position) {
+                throw new IllegalArgumentException("Unexpected character '" + text.charAt(position) + "' at " + position);
+            }
+            return Double.parseDouble(text.substring(start, position));
+        }
+
+        private void expect(char c) {
+            if (text.charAt(position++) != c) {
+                throw new IllegalArgumentException("Expected '" + c + "' at " + (position - 1));
+            }
+        }
+
+        private void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+    }
+}
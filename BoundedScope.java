@@ -0,0 +1,175 @@
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * A {@link StructuredTaskScope} that runs at most {@code limit} subtasks at a time.
+ * <p>
+ * {@link #fork} takes a permit from a {@link SafeResourcePool} before forking and the subtask
+ * gives it back when it finishes, so forks beyond the limit wait in the owner thread instead of
+ * as thousands of parked virtual threads. Cancellation is the wrapped scope's: once it is
+ * cancelled (a joiner short-circuit, a timeout or close) waiting forks stop waiting and return
+ * subtasks that never run.
+ * <p>
+ * {@link #forEach} adds streaming: results are handed to a consumer on the owner thread as they
+ * complete and are not kept, so memory stays flat however many items there are.
+ */
+public final class BoundedScope<T, R> implements AutoCloseable {
+    // How often a fork waiting for a permit checks whether the scope was cancelled
+    private static final long ADMISSION_POLL_MILLIS = 10;
+
+    private final StructuredTaskScope<T, R> scope;
+    private final SafeResourcePool permits;
+    private final int limit;
+
+    private BoundedScope(StructuredTaskScope<T, R> scope, int limit) {
+        if (limit <= 0) {
+            scope.close();
+            throw new IllegalArgumentException("Concurrency limit must be positive!");
+        }
+        this.scope = scope;
+        this.permits = new SafeResourcePool("subtasks", limit);
+        this.limit = limit;
+    }
+
+    public static <T, R> BoundedScope<T, R> open(int limit, StructuredTaskScope.Joiner<? super T, ? extends R> joiner) {
+        return new BoundedScope<>(StructuredTaskScope.open(joiner), limit);
+    }
+
+    // Opens the scope through Deadline, so it times out with the current budget.
+    public static <T, R> BoundedScope<T, R> openWithDeadline(int limit, StructuredTaskScope.Joiner<? super T, ? extends R> joiner) {
+        return new BoundedScope<>(Deadline.open(joiner), limit);
+    }
+
+    // Blocks until fewer than 'limit' subtasks are running, then forks.
+    public <U extends T> StructuredTaskScope.Subtask<U> fork(Callable<? extends U> task) throws InterruptedException {
+        return fork(task, () -> {
+        });
+    }
+
+    private <U extends T> StructuredTaskScope.Subtask<U> fork(Callable<? extends U> task, Runnable whileWaiting)
+            throws InterruptedException {
+        while (!scope.isCancelled()) {
+            if (permits.tryAcquire(ADMISSION_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                try {
+                    return scope.fork(() -> {
+                        try {
+                            return task.call();
+                        } finally {
+                            permits.release();
+                        }
+                    });
+                } catch (RuntimeException | Error ex) {
+                    permits.release();
+                    throw ex;
+                }
+            }
+            whileWaiting.run();
+        }
+        // Cancelled: the scope hands back a subtask that is never run.
+        return scope.fork(task);
+    }
+
+    public R join() throws InterruptedException {
+        return scope.join();
+    }
+
+    public boolean isCancelled() {
+        return scope.isCancelled();
+    }
+
+    // Subtasks running or about to run
+    public int running() {
+        return limit - permits.availablePermits();
+    }
+
+    @Override
+    public void close() {
+        scope.close();
+    }
+
+    /**
+     * Runs {@code task} for every item with at most {@code limit} in flight and passes each result
+     * to {@code sink} on the calling thread, in completion order. The first failure cancels the
+     * remaining subtasks and is thrown from here as a {@link StructuredTaskScope.FailedException}.
+     */
+    public static <I, V> void forEach(Iterable<? extends I> items, int limit,
+                                      Function<? super I, ? extends Callable<? extends V>> task,
+                                      Consumer<? super V> sink) throws InterruptedException {
+        StreamingJoiner<V> joiner = new StreamingJoiner<>();
+        try (BoundedScope<V, Void> bounded = open(limit, joiner)) {
+            for (I item : items) {
+                if (bounded.isCancelled()) {
+                    break;
+                }
+                joiner.drainTo(sink);
+                bounded.fork(task.apply(item), () -> joiner.drainTo(sink));
+            }
+            try {
+                bounded.join();
+            } finally {
+                // At most 'limit' results arrive after the last fork.
+                joiner.drainTo(sink);
+            }
+        }
+    }
+
+    // Queues results for the owner to drain; the first failure cancels the scope.
+    static final class StreamingJoiner<V> implements StructuredTaskScope.Joiner<V, Void> {
+        private static final Object NULL_RESULT = new Object();
+
+        private final ConcurrentLinkedQueue<Object> results = new ConcurrentLinkedQueue<>();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        @Override
+        public boolean onComplete(StructuredTaskScope.Subtask<? extends V> subtask) {
+            switch (subtask.state()) {
+                case SUCCESS -> results.add(subtask.get() == null ? NULL_RESULT : subtask.get());
+                case FAILED -> {
+                    failure.compareAndSet(null, subtask.exception());
+                    return true;
+                }
+                case UNAVAILABLE -> {
+                }
+            }
+            return false;
+        }
+
+        @SuppressWarnings("unchecked")
+        void drainTo(Consumer<? super V> sink) {
+            Object result;
+            while ((result = results.poll()) != null) {
+                sink.accept(result == NULL_RESULT ? null : (V) result);
+            }
+        }
+
+        @Override
+        public Void result() throws Throwable {
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+            return null;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        List<Integer> items = IntStream.range(0, 50_000).boxed().toList();
+        LongAdder sum = new LongAdder();
+
+        long start = System.nanoTime();
+        BoundedScope.forEach(items, 64, item -> () -> {
+            TimeUnit.MILLISECONDS.sleep(1); // Downstream call
+            return item * 2L;
+        }, sum::add);
+
+        System.out.printf("Sum %d in %d ms with at most 64 calls in flight%n", sum.sum(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+}
@@ -0,0 +1,93 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Coalesces changes into periodic flushes.
+ * <p>
+ * {@link #markDirty} only adds a key to a dirty set; the keys are handed to the flush action
+ * every tick, or right away once {@code batchSize} distinct keys are pending. However often a key
+ * changes between two flushes it is flushed once, so the flush rate is bounded by the tick rate
+ * (plus one per full batch), not by the update rate. Flushes never overlap: a flush requested
+ * while one runs is skipped and its keys go out with the next tick.
+ */
+public final class CoalescingBroadcaster implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CoalescingBroadcaster.class);
+
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    // Approximate size of 'dirty'; ConcurrentHashMap's size() would be slower
+    private final AtomicInteger pending = new AtomicInteger();
+    private final ReentrantLock flushing = new ReentrantLock();
+    private final int batchSize;
+    private final Consumer<Set<String>> flush;
+    private final ScheduledFuture<?> ticker;
+
+    public CoalescingBroadcaster(ScheduledExecutorService scheduler, Duration tick, int batchSize,
+                                 Consumer<Set<String>> flush) {
+        if (tick.isNegative() || tick.isZero() || batchSize <= 0) {
+            throw new IllegalArgumentException("Tick and batch size must be positive!");
+        }
+        this.batchSize = batchSize;
+        this.flush = flush;
+        this.ticker = scheduler.scheduleAtFixedRate(this::flush, tick.toNanos(), tick.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    public void markDirty(String key) {
+        if (dirty.add(key) && pending.incrementAndGet() >= batchSize) {
+            flush();
+        }
+    }
+
+    // Hands the pending keys to the flush action; called by the ticker, a full batch or a caller.
+    public void flush() {
+        if (!flushing.tryLock()) {
+            return;
+        }
+        try {
+            flushPending();
+        } finally {
+            flushing.unlock();
+        }
+    }
+
+    // Waits for a running flush rather than skipping, so keys marked after its snapshot still go out.
+    @Override
+    public void close() {
+        ticker.cancel(false);
+        flushing.lock();
+        try {
+            flushPending();
+        } finally {
+            flushing.unlock();
+        }
+    }
+
+    // Called with the lock held. Failures are logged, not thrown, so the ticker keeps running.
+    private void flushPending() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        Set<String> changed = new HashSet<>();
+        for (Iterator<String> keys = dirty.iterator(); keys.hasNext(); ) {
+            changed.add(keys.next());
+            keys.remove();
+        }
+        pending.addAndGet(-changed.size());
+        try {
+            flush.accept(changed);
+        } catch (RuntimeException e) {
+            LOGGER.error("Flush of {} changed keys failed", changed.size(), e);
+        }
+    }
+}
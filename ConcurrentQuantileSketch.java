@@ -0,0 +1,51 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe {@link QuantileSketch}: same buckets and relative error, but every bucket is an
+ * atomic counter, so {@link #add} from many threads is one lock-free increment and never copies
+ * or grows anything. {@link #snapshot()} copies the counts into a plain sketch for querying.
+ */
+public final class ConcurrentQuantileSketch {
+    // Only used for its bucket mapping and parameters; never written to.
+    private final QuantileSketch layout;
+    private final AtomicLongArray positive;
+    private final AtomicLongArray negative;
+    private final LongAdder zeroCount = new LongAdder();
+
+    public ConcurrentQuantileSketch() {
+        this(QuantileSketch.DEFAULT_RELATIVE_ACCURACY, QuantileSketch.DEFAULT_MIN_MAGNITUDE,
+                QuantileSketch.DEFAULT_MAX_MAGNITUDE);
+    }
+
+    public ConcurrentQuantileSketch(double relativeAccuracy, double minMagnitude, double maxMagnitude) {
+        this.layout = new QuantileSketch(relativeAccuracy, minMagnitude, maxMagnitude);
+        this.positive = new AtomicLongArray(layout.buckets());
+        this.negative = new AtomicLongArray(layout.buckets());
+    }
+
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        double magnitude = Math.abs(value);
+        if (magnitude < layout.minMagnitude()) {
+            zeroCount.increment();
+        } else if (value > 0) {
+            positive.incrementAndGet(layout.slot(magnitude));
+        } else {
+            negative.incrementAndGet(layout.slot(magnitude));
+        }
+    }
+
+    // Counts added concurrently with the copy may or may not be included.
+    public QuantileSketch snapshot() {
+        QuantileSketch sketch = new QuantileSketch(layout.relativeAccuracy(), layout.minMagnitude(), layout.maxMagnitude());
+        for (int i = 0; i < positive.length(); i++) {
+            sketch.addToSlot(i, false, positive.get(i));
+            sketch.addToSlot(i, true, negative.get(i));
+        }
+        sketch.addZeros(zeroCount.sum());
+        return sketch;
+    }
+}
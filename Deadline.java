@@ -0,0 +1,122 @@
+import java.time.Duration;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A latency budget that follows the call through nested {@link StructuredTaskScope}s.
+ * <p>
+ * The deadline is bound to {@link #CURRENT}, a {@link ScopedValue}, so every subtask forked
+ * inside {@link #within} sees it without passing it around (see ScopedValueTest). Scopes opened
+ * with {@link #open} time out when the budget runs out, and subtasks can call
+ * {@link #hasTimeFor} or {@link #checkpoint} to skip work that cannot finish in time.
+ * Nested budgets never extend the enclosing one.
+ */
+public final class Deadline {
+    public static final ScopedValue<Deadline> CURRENT = ScopedValue.newInstance();
+
+    private static final Deadline NONE = new Deadline(0, false);
+    // Duration.ofNanos(Long.MAX_VALUE), roughly 292 years
+    private static final Duration FOREVER = Duration.ofNanos(Long.MAX_VALUE);
+
+    // System.nanoTime() at which the budget runs out
+    private final long expiresAt;
+    private final boolean bounded;
+
+    private Deadline(long expiresAt, boolean bounded) {
+        this.expiresAt = expiresAt;
+        this.bounded = bounded;
+    }
+
+    public static Deadline after(Duration budget) {
+        return new Deadline(System.nanoTime() + budget.toNanos(), true);
+    }
+
+    // The bound deadline, or one that never expires
+    public static Deadline current() {
+        return CURRENT.orElse(NONE);
+    }
+
+    // Runs op with the budget bound, narrowed to the enclosing deadline if that is earlier.
+    public static <T, X extends Throwable> T within(Duration budget, ScopedValue.CallableOp<? extends T, X> op) throws X {
+        return ScopedValue.where(CURRENT, current().earliest(after(budget))).call(op);
+    }
+
+    // A scope that times out when the current deadline expires.
+    public static <T, R> StructuredTaskScope<T, R> open(StructuredTaskScope.Joiner<? super T, ? extends R> joiner) {
+        Deadline deadline = current();
+        if (!deadline.bounded) {
+            return StructuredTaskScope.open(joiner);
+        }
+        // A scope needs a positive timeout; an expired budget times out at once.
+        Duration timeout = Duration.ofNanos(Math.max(1, deadline.remaining().toNanos()));
+        return StructuredTaskScope.open(joiner, cf -> cf.withTimeout(timeout));
+    }
+
+    public boolean isBounded() {
+        return bounded;
+    }
+
+    // Time left, zero once expired; FOREVER when unbounded
+    public Duration remaining() {
+        if (!bounded) {
+            return FOREVER;
+        }
+        return Duration.ofNanos(Math.max(0, expiresAt - System.nanoTime()));
+    }
+
+    public boolean expired() {
+        return bounded && expiresAt - System.nanoTime() <= 0;
+    }
+
+    // Whether work expected to take 'estimate' can finish before the deadline.
+    public boolean hasTimeFor(Duration estimate) {
+        return !bounded || expiresAt - System.nanoTime() >= estimate.toNanos();
+    }
+
+    // Throws once the deadline has passed; call between steps of long work.
+    public void checkpoint() throws TimeoutException {
+        if (expired()) {
+            throw new TimeoutException("Deadline exceeded!");
+        }
+    }
+
+    private Deadline earliest(Deadline other) {
+        if (!bounded) {
+            return other;
+        }
+        if (!other.bounded) {
+            return this;
+        }
+        return expiresAt - other.expiresAt <= 0 ? this : other;
+    }
+
+    @Override
+    public String toString() {
+        return bounded ? "Deadline[" + remaining().toMillis() + " ms left]" : "Deadline[none]";
+    }
+
+    public static void main(String[] args) throws Exception {
+        String result = Deadline.within(Duration.ofMillis(500), () -> {
+            try (var scope = Deadline.open(StructuredTaskScope.Joiner.<String>allSuccessfulOrThrow())) {
+                scope.fork(() -> step("fast lookup", 100));
+                scope.fork(() -> Deadline.within(Duration.ofSeconds(10), () -> {
+                    // Still capped at the outer 500 ms.
+                    System.out.println("Nested budget: " + Deadline.current());
+                    return step("nested lookup", 200);
+                }));
+                scope.fork(() -> Deadline.current().hasTimeFor(Duration.ofSeconds(1))
+                        ? step("slow report", 1_000)
+                        : "slow report skipped");
+                return scope.join().map(StructuredTaskScope.Subtask::get).toList().toString();
+            }
+        });
+        System.out.println(result);
+    }
+
+    private static String step(String name, long millis) throws InterruptedException, TimeoutException {
+        Deadline.current().checkpoint();
+        TimeUnit.MILLISECONDS.sleep(millis);
+        return name + " done";
+    }
+}
@@ -0,0 +1,102 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Rounds a double to a number of decimal places without a String round trip.
+ * <p>
+ * The rounding decision is taken on the exact binary value of the double, the same way
+ * {@link java.text.DecimalFormat} and {@code new BigDecimal(value).setScale(places, mode)} do.
+ * For HALF_EVEN and HALF_UP the remainder of {@code value * 10^places} is computed exactly with
+ * {@link Math#fma}, and the rounded integer is divided back by an exact power of ten, which gives
+ * the same double that {@code Double.parseDouble} would have produced from the formatted text.
+ * Anything outside that fast path (other modes, huge values, more than 22 places) goes through
+ * {@link BigDecimal}, which is still exact.
+ */
+public final class DecimalRounding {
+
+    // Every power of ten up to 10^22 is exactly representable as a double.
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // Below this bound n, n + 0.5 and n + 1 are all exact doubles.
+    private static final double MAX_EXACT_SCALED = 0x1p52;
+
+    private DecimalRounding() {
+    }
+
+    public static double round(double value, int places) {
+        return round(value, places, RoundingMode.HALF_EVEN);
+    }
+
+    public static double round(double value, int places, RoundingMode mode) {
+        if (!Double.isFinite(value) || value == 0) {
+            return value;
+        }
+        if (places < 0 || places >= POWERS_OF_TEN.length
+                || (mode != RoundingMode.HALF_EVEN && mode != RoundingMode.HALF_UP)) {
+            return exactRound(value, places, mode);
+        }
+
+        double scale = POWERS_OF_TEN[places];
+        double abs = Math.abs(value);
+        double scaled = abs * scale;
+        if (scaled >= MAX_EXACT_SCALED) {
+            return exactRound(value, places, mode);
+        }
+
+        // 'scaled' itself is rounded, so fix n until n <= abs * 10^places < n + 1 holds exactly.
+        double n = Math.floor(scaled);
+        if (Math.fma(abs, scale, -n) < 0) {
+            n -= 1;
+        } else if (Math.fma(abs, scale, -(n + 1)) >= 0) {
+            n += 1;
+        }
+
+        // fma rounds only once, so the sign of the exact distance to n + 0.5 survives.
+        double distanceToHalf = Math.fma(abs, scale, -(n + 0.5));
+        if (distanceToHalf > 0
+                || (distanceToHalf == 0 && (mode == RoundingMode.HALF_UP || n % 2 != 0))) {
+            n += 1;
+        }
+
+        return Math.copySign(n / scale, value);
+    }
+
+    // Number of fraction digits a plain DecimalFormat pattern like "#,##0.00" keeps, or -1 when the
+    // pattern has prefixes, suffixes, percent, exponent or anything else that changes the value.
+    public static int fractionDigitsOf(String pattern) {
+        int fractionDigits = 0;
+        boolean afterPoint = false;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            switch (c) {
+                case '#', '0' -> {
+                    if (afterPoint) {
+                        fractionDigits++;
+                    }
+                }
+                case ',' -> {
+                    if (afterPoint) {
+                        return -1;
+                    }
+                }
+                case '.' -> {
+                    if (afterPoint) {
+                        return -1;
+                    }
+                    afterPoint = true;
+                }
+                default -> {
+                    return -1;
+                }
+            }
+        }
+        return fractionDigits;
+    }
+
+    private static double exactRound(double value, int places, RoundingMode mode) {
+        return new BigDecimal(value).setScale(places, mode).doubleValue();
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Writes the shortest decimal text of a double straight into a caller-supplied char buffer.
+ * <p>
+ * The output is the same text {@link Double#toString(double)} produces. Values in [10^-3, 10^7)
+ * with at most 15-16 significant digits take the fast path: the writer searches the fewest
+ * fraction digits k such that {@code round(v * 10^k) / 10^k == v} (the decimal round-trips, Ryu's
+ * shortest criterion) and prints that integer directly, without allocating. Everything else
+ * (exponent notation, NaN, infinities, 17-digit values) falls back to {@link Double#toString},
+ * which is itself a shortest-representation algorithm since JDK 19.
+ */
+public final class DoubleWriter {
+
+    // "-2.2250738585072014E-308" is the longest text Double.toString can produce.
+    public static final int MAX_CHARS = 24;
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8,
+            1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17
+    };
+    private static final long[] LONG_POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L,
+            1_000_000_000L, 10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L,
+            10_000_000_000_000L, 100_000_000_000_000L, 1_000_000_000_000_000L,
+            10_000_000_000_000_000L, 100_000_000_000_000_000L
+    };
+    private static final double MAX_EXACT = 0x1p53;
+
+    private DoubleWriter() {
+    }
+
+    // Writes v into buffer starting at offset and returns the number of chars written.
+    public static int write(double v, char[] buffer, int offset) {
+        if (v == 0) {
+            return copy((1 / v < 0) ? "-0.0" : "0.0", buffer, offset);
+        }
+
+        double abs = Math.abs(v);
+        if (abs >= 1e-3 && abs < 1e7) {
+            for (int k = 0; k < POWERS_OF_TEN.length; k++) {
+                double scaled = abs * POWERS_OF_TEN[k];
+                if (scaled >= MAX_EXACT) {
+                    break;
+                }
+                double digits = Math.rint(scaled);
+                if (digits / POWERS_OF_TEN[k] == abs) {
+                    return writeFixed(v < 0, (long) digits, k, buffer, offset);
+                }
+            }
+        }
+
+        return copy(Double.toString(v), buffer, offset);
+    }
+
+    private static int writeFixed(boolean negative, long digits, int fractionDigits, char[] buffer, int offset) {
+        long integerPart = digits / LONG_POWERS_OF_TEN[fractionDigits];
+        long fractionPart = digits % LONG_POWERS_OF_TEN[fractionDigits];
+
+        int pos = offset;
+        if (negative) {
+            buffer[pos++] = '-';
+        }
+        pos += writeDigits(integerPart, integerLength(integerPart), buffer, pos);
+        buffer[pos++] = '.';
+        if (fractionDigits == 0) {
+            buffer[pos++] = '0';
+        } else {
+            pos += writeDigits(fractionPart, fractionDigits, buffer, pos);
+        }
+        return pos - offset;
+    }
+
+    // Writes value as exactly 'length' digits, left padded with zeros.
+    private static int writeDigits(long value, int length, char[] buffer, int offset) {
+        for (int i = offset + length - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return length;
+    }
+
+    private static int integerLength(long value) {
+        int length = 1;
+        while (length < LONG_POWERS_OF_TEN.length && value >= LONG_POWERS_OF_TEN[length]) {
+            length++;
+        }
+        return length;
+    }
+
+    private static int copy(String text, char[] buffer, int offset) {
+        text.getChars(0, text.length(), buffer, offset);
+        return text.length();
+    }
+}
@@ -0,0 +1,617 @@
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Fixed-point twin of {@link MathExpression} for money and other exact decimal work.
+ * <p>
+ * Every value is kept as a {@code long} scaled by {@code 10^scale} (2 for cents, 4 for basis points...),
+ * so 0.1 + 0.2 is exactly 0.30 and operations run on plain long arithmetic. Overflow is checked on
+ * every step; only an operation that would overflow is redone with {@link BigDecimal}, and the
+ * value drops back to a long as soon as it fits again. A multiplier or divisor is used at its own
+ * precision (times 1.0825 is not times 1.08 at scale 2); only the product or quotient is rounded
+ * to the configured scale with the configured {@link RoundingMode}.
+ * <p>
+ * Double arguments are read as the shortest decimal that prints them ("19.99", not
+ * 19.989999999999998436805981327779591083526611328125), the same as {@link BigDecimal#valueOf(double)}.
+ */
+public final class FixedPointExpression {
+    private final long unscaled;
+    private final BigDecimal wide;
+    private final int scale;
+    private final RoundingMode roundingMode;
+
+    private FixedPointExpression(Builder builder) {
+        this.unscaled = builder.number.unscaled;
+        this.wide = builder.number.wide;
+        this.scale = builder.scale;
+        this.roundingMode = builder.roundingMode;
+    }
+
+    // Returns final result, rounded to the nearest double
+    public double get() {
+        if (wide != null) {
+            return wide.doubleValue();
+        }
+        if (Math.abs(unscaled) < (1L << 53)) {
+            return unscaled / POWERS_OF_TEN_DOUBLE[scale];
+        }
+        return BigDecimal.valueOf(unscaled, scale).doubleValue();
+    }
+
+    // Returns the exact result
+    public BigDecimal toBigDecimal() {
+        return wide != null ? wide : BigDecimal.valueOf(unscaled, scale);
+    }
+
+    // Returns the exact result as a long scaled by 10^scale, e.g. cents for scale 2
+    public long unscaledValue() {
+        if (wide != null) {
+            throw new ArithmeticException("Result " + wide + " does not fit in a scaled long!");
+        }
+        return unscaled;
+    }
+
+    // Return result in long, rounded with the builder's rounding mode
+    public long toLong() {
+        if (wide != null) {
+            BigInteger integer = wide.setScale(0, roundingMode).unscaledValue();
+            if (integer.bitLength() < 64) {
+                return integer.longValue();
+            }
+            return integer.signum() > 0 ? Long.MAX_VALUE : Long.MIN_VALUE;
+        }
+        return divideRounded(unscaled, POWERS_OF_TEN[scale], roundingMode);
+    }
+
+    public int scale() {
+        return scale;
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+
+    public static void main(String[] args) {
+        // Three items at 19.99 plus 8.25% tax: 59.97 * 1.0825 = 64.9175, rounded to cents
+        FixedPointExpression total = new Builder(19.99, 2, RoundingMode.HALF_EVEN).multiply(3).multiply(1.0825).build();
+        System.out.println("Total with tax: " + total + " (" + total.unscaledValue() + " cents)");
+
+        // Back out the price before tax
+        System.out.println("Net of 100.00: " + new Builder(100, 2, RoundingMode.HALF_EVEN).divide(1.0825).build());
+
+        // 0.1 + 0.2 is 0.30, not 0.30000000000000004
+        System.out.println("0.1 + 0.2 = " + new Builder(0.1, 2, RoundingMode.HALF_EVEN).add(0.2).build());
+
+        // Too big for a scaled long, so it is finished in BigDecimal
+        System.out.println("1e15 * 1.0825 = " + new Builder(1e15, 2, RoundingMode.HALF_EVEN).multiply(1.0825).build());
+    }
+
+    // 10^18 is the largest power of ten that fits in a long.
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L,
+            1_000_000_000L, 10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L,
+            10_000_000_000_000L, 100_000_000_000_000L, 1_000_000_000_000_000L,
+            10_000_000_000_000_000L, 100_000_000_000_000_000L, 1_000_000_000_000_000_000L
+    };
+    private static final double[] POWERS_OF_TEN_DOUBLE = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+            1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18
+    };
+
+    // Exact num / den rounded with mode, same result as BigDecimal.divide(..., 0, mode).
+    private static long divideRounded(long num, long den, RoundingMode mode) {
+        // Only Long.MIN_VALUE / -1 overflows
+        long quotient = Math.divideExact(num, den);
+        long remainder = num % den;
+        if (remainder == 0) {
+            return quotient;
+        }
+
+        int sign = (num ^ den) < 0 ? -1 : 1;
+        boolean increment = switch (mode) {
+            case UNNECESSARY -> throw new ArithmeticException("Rounding necessary");
+            case DOWN -> false;
+            case UP -> true;
+            case FLOOR -> sign < 0;
+            case CEILING -> sign > 0;
+            case HALF_UP, HALF_DOWN, HALF_EVEN -> {
+                // Compare |remainder| with |den| - |remainder| on negated values, which cannot overflow.
+                long negativeRemainder = -Math.abs(remainder);
+                long negativeRest = (den < 0 ? den : -den) - negativeRemainder;
+                int cmp = Long.compare(negativeRest, negativeRemainder);
+                yield cmp > 0 || (cmp == 0 && (mode == RoundingMode.HALF_UP
+                        || (mode == RoundingMode.HALF_EVEN && (quotient & 1) != 0)));
+            }
+        };
+        return increment ? quotient + sign : quotient;
+    }
+
+    private enum Operation {
+        ADD, SUBTRACT, MULTIPLY, DIVIDE, MOD, MAX, MIN
+    }
+
+    // A scaled long, or the BigDecimal it overflowed into.
+    private static final class Register {
+        long unscaled;
+        BigDecimal wide;
+
+        void set(long value) {
+            unscaled = value;
+            wide = null;
+        }
+
+        void set(BigDecimal value) {
+            BigInteger digits = value.unscaledValue();
+            if (digits.bitLength() < 64) {
+                set(digits.longValue());
+            } else {
+                unscaled = 0;
+                wide = value;
+            }
+        }
+
+        void set(Register other) {
+            unscaled = other.unscaled;
+            wide = other.wide;
+        }
+
+        boolean isZero() {
+            return wide == null ? unscaled == 0 : wide.signum() == 0;
+        }
+
+        BigDecimal toBigDecimal(int scale) {
+            return wide != null ? wide : BigDecimal.valueOf(unscaled, scale);
+        }
+
+        double toDouble(int scale) {
+            return wide != null ? wide.doubleValue() : unscaled / POWERS_OF_TEN_DOUBLE[scale];
+        }
+    }
+
+    public static class Builder {
+        private final StringBuilder expression = new StringBuilder();
+        private final char[] digits = new char[DoubleWriter.MAX_CHARS];
+        private final int scale;
+        private final RoundingMode roundingMode;
+        private final long unit;
+        private final Register number = new Register();
+        private final Register sideNumber = new Register();
+        private final Register memory = new Register();
+        private final Register operand = new Register();
+        // Scale of 'operand' when it was loaded at its own precision, else 'scale'
+        private int operandScale;
+        private int openParenthesisIndex;
+        private boolean inParenthesis;
+
+        public Builder(int scale, RoundingMode roundingMode) {
+            if (scale < 0 || scale >= POWERS_OF_TEN.length) {
+                throw new IllegalArgumentException("Scale must be between 0 and " + (POWERS_OF_TEN.length - 1) + "!");
+            }
+            this.scale = scale;
+            this.roundingMode = roundingMode;
+            this.unit = POWERS_OF_TEN[scale];
+        }
+
+        public Builder(double num, int scale, RoundingMode roundingMode) {
+            this(scale, roundingMode);
+            load(number, num);
+            appendNumber(num);
+        }
+
+        public Builder(BigDecimal num, int scale, RoundingMode roundingMode) {
+            this(scale, roundingMode);
+            number.set(num.setScale(scale, roundingMode));
+            expression.append(num.toPlainString()).append(" ");
+        }
+
+        public Builder add(double num) {
+            apply(Operation.ADD, num);
+            expression.append("+").append(" ");
+            appendNumber(num);
+            return this;
+        }
+
+        // Takes a number and a condition, only does the operation if condition is true.
+        public Builder addIf(double num, BiFunction<Double, Double, Boolean> condition) {
+            if (!condition.apply(number.toDouble(scale), num)) {
+                return this;
+            }
+            return add(num);
+        }
+
+        public Builder minus(double num) {
+            apply(Operation.SUBTRACT, num);
+            expression.append("-").append(" ");
+            appendNumber(num);
+            return this;
+        }
+
+        // Takes a number and a condition, only does the operation if condition is true.
+        public Builder minusIf(double num, BiFunction<Double, Double, Boolean> condition) {
+            if (!condition.apply(number.toDouble(scale), num)) {
+                return this;
+            }
+            return minus(num);
+        }
+
+        public Builder multiply(double num) {
+            apply(Operation.MULTIPLY, num);
+            expression.append("*").append(" ");
+            appendNumber(num);
+            return this;
+        }
+
+        // Takes a number and a condition, only does the operation if condition is true.
+        public Builder multiplyIf(double num, BiFunction<Double, Double, Boolean> condition) {
+            if (!condition.apply(number.toDouble(scale), num)) {
+                return this;
+            }
+            return multiply(num);
+        }
+
+        // Like MathExpression, dividing by zero is ignored.
+        public Builder divide(double num) {
+            if (!apply(Operation.DIVIDE, num)) {
+                return this;
+            }
+            expression.append("/").append(" ");
+            appendNumber(num);
+            return this;
+        }
+
+        // Takes a number and a condition, only does the operation if condition is true.
+        public Builder divideIf(double num, BiFunction<Double, Double, Boolean> condition) {
+            if (num == 0) {
+                return this;
+            }
+            if (!condition.apply(number.toDouble(scale), num)) {
+                return this;
+            }
+            return divide(num);
+        }
+
+        public Builder mod(double num) {
+            if (!apply(Operation.MOD, num)) {
+                return this;
+            }
+            expression.append("%").append(" ");
+            appendNumber(num);
+            return this;
+        }
+
+        // Takes a number and a condition, only does the operation if condition is true.
+        public Builder modIf(double num, BiFunction<Double, Double, Boolean> condition) {
+            if (num == 0) {
+                return this;
+            }
+            if (!condition.apply(number.toDouble(scale), num)) {
+                return this;
+            }
+            return mod(num);
+        }
+
+        public Builder max(double num) {
+            apply(Operation.MAX, num);
+            wrapExpression("max( ", num);
+            return this;
+        }
+
+        public Builder min(double num) {
+            apply(Operation.MIN, num);
+            wrapExpression("min( ", num);
+            return this;
+        }
+
+        // Integer powers only; every intermediate product is rounded to the scale.
+        public Builder pow(int exponent) {
+            if (exponent < 0) {
+                throw new IllegalArgumentException("Exponent must not be negative!");
+            }
+            Register target = active();
+            operand.set(target);
+            target.set(unit);
+            for (int i = 0; i < exponent; i++) {
+                combine(target, Operation.MULTIPLY, operand, scale);
+            }
+            wrapExpression("pow( ", exponent);
+            return this;
+        }
+
+        public Builder abs() {
+            Register target = active();
+            if (target.wide != null) {
+                target.set(target.wide.abs());
+            } else if (target.unscaled == Long.MIN_VALUE) {
+                target.set(BigDecimal.valueOf(target.unscaled, scale).abs());
+            } else {
+                target.set(Math.abs(target.unscaled));
+            }
+            wrapExpression("abs( ");
+            return this;
+        }
+
+        // Rounds to a whole number with the builder's rounding mode
+        public Builder round() {
+            roundTo(active(), 0, roundingMode);
+            wrapExpression("round( ");
+            return this;
+        }
+
+        public Builder floor() {
+            roundTo(active(), 0, RoundingMode.FLOOR);
+            wrapExpression("floor( ");
+            return this;
+        }
+
+        public Builder ceil() {
+            roundTo(active(), 0, RoundingMode.CEILING);
+            wrapExpression("ceil( ");
+            return this;
+        }
+
+        // Rounds NUMBER to fewer decimal places than the scale, e.g. format(0) on a cents value
+        public Builder format(int decimalPlace) {
+            if (decimalPlace < 0) {
+                throw new IllegalArgumentException("Decimal place must not be negative!");
+            }
+            roundTo(number, decimalPlace, roundingMode);
+            return this;
+        }
+
+        // Remembers the NUMBER
+        public Builder remember() {
+            memory.set(number);
+            return this;
+        }
+
+        // Recalls the NUMBER
+        public Builder recall(boolean cleanMemory) {
+            number.set(memory);
+            if (cleanMemory) {
+                memory.set(0);
+            }
+            return this;
+        }
+
+        // Recalls the NUMBER on condition
+        public Builder recallIf(Function<Double, Boolean> condition, boolean cleanMemory) {
+            if (!condition.apply(number.toDouble(scale))) {
+                return this;
+            }
+            return recall(cleanMemory);
+        }
+
+        // Replaces NUMBER with given number
+        public Builder set(double num) {
+            if (!number.isZero()) {
+                throw new RuntimeException("Number must be zero to set!");
+            }
+            load(number, num);
+            appendNumber(num);
+            return this;
+        }
+
+        // Replaces NUMBER with given number on condition
+        public Builder setIf(double num, BiFunction<Double, Double, Boolean> condition) {
+            if (!number.isZero()) {
+                throw new RuntimeException("Number must be zero to set!");
+            }
+            if (condition.apply(number.toDouble(scale), num)) {
+                load(number, num);
+            }
+            appendNumber(num);
+            return this;
+        }
+
+        // Prints current NUMBER
+        public Builder print() {
+            System.out.println("FixedPointBuilder Result :: " + number.toBigDecimal(scale).toPlainString());
+            return this;
+        }
+
+        public Builder printExpression() {
+            System.out.println(expression);
+            return this;
+        }
+
+        public Builder openParenthesis(double num) {
+            load(sideNumber, num);
+            inParenthesis = true;
+            expression.append("(").append(" ");
+            appendNumber(num);
+            openParenthesisIndex = expression.lastIndexOf("(");
+            return this;
+        }
+
+        public Builder closeParenthesisAndPlus() {
+            return closeParenthesis(Operation.ADD, "+ ");
+        }
+
+        public Builder closeParenthesisAndMinus() {
+            return closeParenthesis(Operation.SUBTRACT, "- ");
+        }
+
+        public Builder closeParenthesisAndMultiply() {
+            return closeParenthesis(Operation.MULTIPLY, "* ");
+        }
+
+        public Builder closeParenthesisAndDivide() {
+            if (sideNumber.isZero()) {
+                throw new ArithmeticException("Division by zero");
+            }
+            return closeParenthesis(Operation.DIVIDE, "/ ");
+        }
+
+        public FixedPointExpression build() {
+            return new FixedPointExpression(this);
+        }
+
+        private Builder closeParenthesis(Operation operation, String symbol) {
+            combine(number, operation, sideNumber, scale);
+            inParenthesis = false;
+            sideNumber.set(0);
+            expression.append(")").append(" ");
+            expression.insert(openParenthesisIndex, symbol);
+            openParenthesisIndex = 0;
+            return this;
+        }
+
+        private Register active() {
+            return inParenthesis ? sideNumber : number;
+        }
+
+        // Returns false when a division or mod by zero was skipped.
+        private boolean apply(Operation operation, double num) {
+            if (operation == Operation.MULTIPLY || operation == Operation.DIVIDE) {
+                operandScale = loadExact(operand, num);
+            } else {
+                load(operand, num);
+                operandScale = scale;
+            }
+            if ((operation == Operation.DIVIDE || operation == Operation.MOD) && operand.isZero()) {
+                return false;
+            }
+            combine(active(), operation, operand, operandScale);
+            return true;
+        }
+
+        // Reads a double as its shortest decimal, scaled; exact whenever that decimal has at most 'scale' digits.
+        private void load(Register target, double num) {
+            if (!Double.isFinite(num)) {
+                throw new ArithmeticException("Fixed-point values must be finite!");
+            }
+            double scaled = num * POWERS_OF_TEN_DOUBLE[scale];
+            double rounded = Math.rint(scaled);
+            if (Math.abs(rounded) < 0x1p53 && rounded / POWERS_OF_TEN_DOUBLE[scale] == num) {
+                target.set((long) rounded);
+                return;
+            }
+            target.set(BigDecimal.valueOf(num).setScale(scale, roundingMode));
+        }
+
+        // Reads a double as its shortest decimal without rounding it; returns the scale it was stored at.
+        private int loadExact(Register target, double num) {
+            if (!Double.isFinite(num)) {
+                throw new ArithmeticException("Fixed-point values must be finite!");
+            }
+            double scaled = num * POWERS_OF_TEN_DOUBLE[scale];
+            double rounded = Math.rint(scaled);
+            if (Math.abs(rounded) < 0x1p53 && rounded / POWERS_OF_TEN_DOUBLE[scale] == num) {
+                target.set((long) rounded);
+                return scale;
+            }
+            BigDecimal exact = BigDecimal.valueOf(num);
+            if (exact.scale() < 0) {
+                exact = exact.setScale(0);
+            }
+            target.set(exact);
+            return exact.scale();
+        }
+
+        // 'right' is scaled by 10^rightScale; the result is always rounded to 'scale'.
+        private void combine(Register target, Operation operation, Register right, int rightScale) {
+            if (target.wide == null && right.wide == null
+                    && combineLongs(target, operation, target.unscaled, right.unscaled, rightScale)) {
+                return;
+            }
+            BigDecimal a = target.toBigDecimal(scale);
+            BigDecimal b = right.toBigDecimal(rightScale);
+            target.set(switch (operation) {
+                case ADD -> a.add(b);
+                case SUBTRACT -> a.subtract(b);
+                case MULTIPLY -> a.multiply(b).setScale(scale, roundingMode);
+                case DIVIDE -> a.divide(b, scale, roundingMode);
+                case MOD -> a.remainder(b);
+                case MAX -> a.max(b);
+                case MIN -> a.min(b);
+            });
+        }
+
+        // The long fast path; returns false when the result would overflow.
+        private boolean combineLongs(Register target, Operation operation, long a, long b, int rightScale) {
+            if (rightScale >= POWERS_OF_TEN.length) {
+                return false;
+            }
+            long rightUnit = POWERS_OF_TEN[rightScale];
+            long result;
+            switch (operation) {
+                case ADD -> {
+                    result = a + b;
+                    if (((a ^ result) & (b ^ result)) < 0) {
+                        return false;
+                    }
+                }
+                case SUBTRACT -> {
+                    result = a - b;
+                    if (((a ^ b) & (a ^ result)) < 0) {
+                        return false;
+                    }
+                }
+                case MULTIPLY -> {
+                    // a * b carries scale + rightScale; the 128-bit product must fit in a long before rescaling.
+                    long low = a * b;
+                    if (Math.multiplyHigh(a, b) != (low >> 63)) {
+                        return false;
+                    }
+                    result = divideRounded(low, rightUnit, roundingMode);
+                }
+                case DIVIDE -> {
+                    long numerator = a * rightUnit;
+                    // Long.MIN_VALUE / -1 is the one quotient that does not fit
+                    if (Math.multiplyHigh(a, rightUnit) != (numerator >> 63)
+                            || (numerator == Long.MIN_VALUE && b == -1)) {
+                        return false;
+                    }
+                    result = divideRounded(numerator, b, roundingMode);
+                }
+                case MOD -> result = a % b;
+                case MAX -> result = Math.max(a, b);
+                case MIN -> result = Math.min(a, b);
+                default -> throw new IllegalStateException("Unknown operation " + operation);
+            }
+            target.set(result);
+            return true;
+        }
+
+        private void roundTo(Register target, int places, RoundingMode mode) {
+            if (places >= scale) {
+                return;
+            }
+            if (target.wide != null) {
+                target.set(target.wide.setScale(places, mode).setScale(scale));
+                return;
+            }
+            long step = POWERS_OF_TEN[scale - places];
+            long rounded = divideRounded(target.unscaled, step, mode);
+            long result = rounded * step;
+            if (Math.multiplyHigh(rounded, step) != (result >> 63)) {
+                target.set(BigDecimal.valueOf(rounded, places).setScale(scale));
+            } else {
+                target.set(result);
+            }
+        }
+
+        private void wrapExpression(String function) {
+            String expressionSoFar = expression.toString();
+            expression.setLength(0);
+            expression.append(function).append(expressionSoFar).append(" ) ");
+        }
+
+        private void wrapExpression(String function, double num) {
+            String expressionSoFar = expression.toString();
+            expression.setLength(0);
+            expression.append(function).append(expressionSoFar).append(", ");
+            appendNumber(num);
+            expression.append(") ");
+        }
+
+        // Writes the number and a separating space into the expression without a String per number
+        private void appendNumber(double num) {
+            expression.append(digits, 0, DoubleWriter.write(num, digits, 0)).append(" ");
+        }
+    }
+}
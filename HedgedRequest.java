@@ -0,0 +1,188 @@
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hedged requests on top of {@link StructuredTaskScope}: call the primary, and only if it has not
+ * answered after the hedge delay, call the backup too. The first success wins and the scope
+ * cancels the other call.
+ * <p>
+ * Both subtasks are forked at once, but the backup's virtual thread just waits until the delay
+ * has passed (or the primary has failed) before calling the backend, so a fast primary costs one
+ * call, not two. The delay is either fixed or adaptive: a percentile of the latencies of earlier
+ * successful calls, e.g. the p95, so roughly one request in twenty is hedged. Latencies are kept
+ * per time window and the delay comes from the last complete window, so it follows the backend
+ * when it speeds up or slows down instead of being averaged into all of history.
+ */
+public final class HedgedRequest {
+    // Adaptive delays use the initial delay until this many calls have been measured.
+    private static final int MIN_SAMPLES = 100;
+    private static final Duration DEFAULT_WINDOW = Duration.ofSeconds(10);
+
+    private final Duration initialDelay;
+    private final double percentile;
+    private final long windowNanos;
+    // Latencies of the running window and of the one before it
+    private volatile LatencyHistogram current = new LatencyHistogram();
+    private volatile LatencyHistogram previous = new LatencyHistogram();
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+    private final LongAdder hedged = new LongAdder();
+
+    private HedgedRequest(Duration initialDelay, double percentile, Duration window) {
+        if (initialDelay.isNegative()) {
+            throw new IllegalArgumentException("Hedge delay must not be negative!");
+        }
+        if (window.isNegative() || window.isZero()) {
+            throw new IllegalArgumentException("Window must be positive!");
+        }
+        this.initialDelay = initialDelay;
+        this.percentile = percentile;
+        this.windowNanos = window.toNanos();
+    }
+
+    public static HedgedRequest fixed(Duration delay) {
+        return new HedgedRequest(delay, Double.NaN, DEFAULT_WINDOW);
+    }
+
+    // Hedge after the given percentile (0-100) of observed latencies; initialDelay until warmed up.
+    public static HedgedRequest adaptive(double percentile, Duration initialDelay) {
+        return adaptive(percentile, initialDelay, DEFAULT_WINDOW);
+    }
+
+    // Same, with the percentile taken over windows of the given length
+    public static HedgedRequest adaptive(double percentile, Duration initialDelay, Duration window) {
+        if (percentile <= 0 || percentile >= 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100!");
+        }
+        return new HedgedRequest(initialDelay, percentile, window);
+    }
+
+    // The same call sent to redundant backends.
+    public <T> T call(Callable<? extends T> request) throws InterruptedException {
+        return call(request, request);
+    }
+
+    public <T> T call(Callable<? extends T> primary, Callable<? extends T> backup) throws InterruptedException {
+        long delay = hedgeDelay().toNanos();
+        var joiner = new HedgingJoiner<T>();
+        try (var scope = StructuredTaskScope.open(joiner)) {
+            scope.fork(() -> measured(primary));
+            scope.fork(() -> {
+                // Interrupted here when the primary succeeds first and the scope is cancelled.
+                joiner.primaryFailed.await(delay, TimeUnit.NANOSECONDS);
+                hedged.increment();
+                return measured(backup);
+            });
+            return scope.join();
+        }
+    }
+
+    // From the last complete window, or from the running one until a complete window has enough samples.
+    public Duration hedgeDelay() {
+        if (Double.isNaN(percentile)) {
+            return initialDelay;
+        }
+        rotate();
+        LatencyHistogram latencies = previous.count() >= MIN_SAMPLES ? previous : current;
+        if (latencies.count() < MIN_SAMPLES) {
+            return initialDelay;
+        }
+        return Duration.ofNanos(latencies.percentile(percentile));
+    }
+
+    // Number of backup calls actually made
+    public long hedges() {
+        return hedged.sum();
+    }
+
+    private <T> T measured(Callable<? extends T> call) throws Exception {
+        long start = System.nanoTime();
+        T result = call.call();
+        current.record(System.nanoTime() - start);
+        return result;
+    }
+
+    // Starts a new window once the running one is over; after a quiet spell of two windows or
+    // more, nothing of the old ones is kept.
+    private void rotate() {
+        long start = windowStart.get();
+        long now = System.nanoTime();
+        if (now - start >= windowNanos && windowStart.compareAndSet(start, now)) {
+            previous = now - start >= 2 * windowNanos ? new LatencyHistogram() : current;
+            current = new LatencyHistogram();
+        }
+    }
+
+    // First success wins; a failure lets the backup start at once; fails only if both calls fail.
+    static final class HedgingJoiner<T> implements StructuredTaskScope.Joiner<T, T> {
+        private final CountDownLatch primaryFailed = new CountDownLatch(1);
+        private final AtomicReference<T> result = new AtomicReference<>();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+        private volatile boolean succeeded;
+
+        @Override
+        public boolean onComplete(StructuredTaskScope.Subtask<? extends T> subtask) {
+            switch (subtask.state()) {
+                case SUCCESS -> {
+                    if (!succeeded) {
+                        result.compareAndSet(null, subtask.get());
+                        succeeded = true;
+                    }
+                    return true;
+                }
+                case FAILED -> {
+                    if (!firstFailure.compareAndSet(null, subtask.exception())) {
+                        firstFailure.get().addSuppressed(subtask.exception());
+                    }
+                    primaryFailed.countDown();
+                    return failures.incrementAndGet() == 2;
+                }
+                case UNAVAILABLE -> {
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public T result() throws Throwable {
+            if (succeeded) {
+                return result.get();
+            }
+            throw firstFailure.get();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        HedgedRequest hedging = HedgedRequest.adaptive(95, Duration.ofMillis(50));
+        LatencyHistogram plain = new LatencyHistogram();
+        LatencyHistogram hedgedLatencies = new LatencyHistogram();
+
+        for (int i = 0; i < 1_000; i++) {
+            long start = System.nanoTime();
+            backend();
+            plain.record(System.nanoTime() - start);
+
+            start = System.nanoTime();
+            hedging.call(HedgedRequest::backend);
+            hedgedLatencies.record(System.nanoTime() - start);
+        }
+
+        System.out.println("Plain  (ns): " + plain);
+        System.out.println("Hedged (ns): " + hedgedLatencies);
+        System.out.println("Hedge delay " + hedging.hedgeDelay().toMillis() + " ms, " + hedging.hedges() + " backup calls");
+    }
+
+    // 2 ms usually, 100 ms one time in fifty.
+    private static String backend() throws InterruptedException {
+        TimeUnit.MILLISECONDS.sleep(ThreadLocalRandom.current().nextInt(50) == 0 ? 100 : 2);
+        return "OK";
+    }
+}
@@ -1,6 +1,4 @@
 import java.time.Duration;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.StructuredTaskScope;
 import java.util.concurrent.TimeUnit;
@@ -98,6 +96,21 @@ public class Java25StructuredTaskScope {
         }
     }
 
+    private static void majorityJoiner() {
+        try (
+                var scope = StructuredTaskScope.open(QuorumJoiners.<String>majority(3))
+        ) {
+            scope.fork(() -> task(1, false));
+            scope.fork(() -> task(1, false));
+            scope.fork(() -> task(2, true));
+
+            String agreed = scope.join(); // Two equal answers out of three are enough.
+            System.out.println("✅ Agreed: " + agreed);
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+    }
+
     private static String task(int sec, boolean fail) {
         try {
             TimeUnit.SECONDS.sleep(sec);
@@ -112,53 +125,11 @@ public class Java25StructuredTaskScope {
         }
     }
 
-    static class TargetSuccessJoiner<T> implements StructuredTaskScope.Joiner<T, List<T>> {
-
-        private final int targetCount;
-        private final List<T> successfulResults =
-                Collections.synchronizedList(new ArrayList<>());
-        private final List<Throwable> exceptions =
-                Collections.synchronizedList(new ArrayList<>());
+    // Kept for existing callers; the k fastest successes, collected without locking (see QuorumJoiners).
+    static class TargetSuccessJoiner<T> extends QuorumJoiners.SuccessQuorum<T> {
 
         TargetSuccessJoiner(int targetCount) {
-            this.targetCount = targetCount;
-        }
-
-        @Override
-        public boolean onComplete(StructuredTaskScope.Subtask<? extends T> subtask) {
-            switch (subtask.state()) {
-                case SUCCESS -> {
-                    System.out.println("✅ Success: " + subtask.get());
-                    successfulResults.add(subtask.get());
-                    if (successfulResults.size() >= targetCount) {
-                        System.out.println("🚦 Reached " + targetCount + " successes — shutting down scope!");
-                        return true;
-                    }
-                }
-                case FAILED -> {
-                    System.out.println("❌ Failure: " + subtask.exception());
-                    exceptions.add(subtask.exception());
-                }
-                case UNAVAILABLE -> {
-                }
-            }
-
-            return false;
-        }
-
-        @Override
-        public List<T> result() throws Throwable {
-            if (successfulResults.size() >= targetCount) {
-                return List.copyOf(successfulResults);
-            } else {
-                Exception ex = new Exception("Fewer than " + targetCount + " tasks succeeded");
-
-                // This line attaches all those subtask exceptions to your main exception as suppressed exceptions.
-                // That means if two subtasks failed with different stack traces, you don’t lose that information
-                // it’s all preserved inside ex.
-                exceptions.forEach(ex::addSuppressed);
-                throw ex;
-            }
+            super(targetCount, Integer.MAX_VALUE);
         }
     }
 }
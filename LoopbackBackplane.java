@@ -0,0 +1,68 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * In-memory {@link ProgressBackplane}: every subscriber in this JVM receives every published batch.
+ * <p>
+ * Each subscriber has its own queue and virtual thread, so like a real broker a publish returns
+ * at once and a slow node only delays itself. Several controllers sharing one instance behave as
+ * nodes of one cluster, which is how multi-node fan-out can be tried without Redis or Kafka.
+ */
+public final class LoopbackBackplane implements ProgressBackplane {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoopbackBackplane.class);
+
+    private final List<Node> nodes = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(List<? extends Message> batch) {
+        List<Message> copy = List.copyOf(batch);
+        for (Node node : nodes) {
+            node.inbox.offer(copy);
+        }
+    }
+
+    @Override
+    public Subscription subscribe(Consumer<List<Message>> listener) {
+        Node node = new Node(listener);
+        nodes.add(node);
+        return () -> {
+            nodes.remove(node);
+            node.thread.interrupt();
+        };
+    }
+
+    @Override
+    public void close() {
+        for (Node node : nodes) {
+            node.thread.interrupt();
+        }
+        nodes.clear();
+    }
+
+    private static final class Node {
+        private final LinkedBlockingQueue<List<Message>> inbox = new LinkedBlockingQueue<>();
+        private final Thread thread;
+
+        Node(Consumer<List<Message>> listener) {
+            this.thread = Thread.ofVirtual().name("backplane-node").start(() -> {
+                try {
+                    while (true) {
+                        List<Message> batch = inbox.take();
+                        try {
+                            listener.accept(batch);
+                        } catch (RuntimeException e) {
+                            LOGGER.error("Applying a backplane batch failed", e);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    // Unsubscribed
+                }
+            });
+        }
+    }
+}
@@ -1,7 +1,9 @@
+import java.math.RoundingMode;
 import java.text.DecimalFormat;
 import java.util.Random;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.random.RandomGenerator;
 
 /**
  * Author: Sadiul Hakim : https://github.com/sadiul-hakim
@@ -40,11 +42,13 @@ public final class MathExpression {
 
     public static class Builder {
         private final StringBuilder expression = new StringBuilder();
+        private final char[] digits = new char[DoubleWriter.MAX_CHARS];
         private double number;
         private double sideNumber;
         private int openParenthesisIndex;
         private boolean inParenthesis;
         private double memory = 0;
+        private boolean approximate;
 
         public Builder() {
             number = 0;
@@ -52,7 +56,7 @@ public final class MathExpression {
 
         public Builder(double num) {
             number = num;
-            expression.append(num).append(" ");
+            appendNumber(num);
         }
 
         public Builder add(double num) {
@@ -61,7 +65,8 @@ public final class MathExpression {
             } else {
                 number += num;
             }
-            expression.append("+").append(" ").append(num).append(" ");
+            expression.append("+").append(" ");
+            appendNumber(num);
             return this;
         }
 
@@ -75,7 +80,8 @@ public final class MathExpression {
             } else {
                 number += num;
             }
-            expression.append("+").append(" ").append(num).append(" ");
+            expression.append("+").append(" ");
+            appendNumber(num);
             return this;
         }
 
@@ -85,7 +91,8 @@ public final class MathExpression {
             } else {
                 number -= num;
             }
-            expression.append("-").append(" ").append(num).append(" ");
+            expression.append("-").append(" ");
+            appendNumber(num);
             return this;
         }
 
@@ -99,7 +106,8 @@ public final class MathExpression {
             } else {
                 number -= num;
             }
-            expression.append("-").append(" ").append(num).append(" ");
+            expression.append("-").append(" ");
+            appendNumber(num);
             return this;
         }
 
@@ -110,7 +118,17 @@ public final class MathExpression {
             }
             Random random = new Random();
             number = random.nextDouble(seed);
-            expression.append(number).append(" ");
+            appendNumber(number);
+            return this;
+        }
+
+        // Draws NUMBER from the given generator, e.g. a per-worker SplittableRandom stream
+        public Builder rand(RandomGenerator random) {
+            if (number != 0) {
+                throw new RuntimeException("Number must be zero for random assignment!");
+            }
+            number = random.nextDouble();
+            appendNumber(number);
             return this;
         }
 
@@ -120,7 +138,7 @@ public final class MathExpression {
                 throw new RuntimeException("Number must be zero for PI assignment!");
             }
             number = Math.PI;
-            expression.append(number).append(" ");
+            appendNumber(number);
             return this;
         }
 
@@ -130,7 +148,7 @@ public final class MathExpression {
                 throw new RuntimeException("Number must be zero for E assignment!");
             }
             number = Math.E;
-            expression.append(number).append(" ");
+            appendNumber(number);
             return this;
         }
 
@@ -140,7 +158,16 @@ public final class MathExpression {
             }
             Random random = new Random();
             number = min + (max - min) * random.nextDouble();
-            expression.append(number).append(" ");
+            appendNumber(number);
+            return this;
+        }
+
+        public Builder randomInRange(double min, double max, RandomGenerator random) {
+            if (number != 0) {
+                throw new RuntimeException("Number must be zero for random assignment!");
+            }
+            number = min + (max - min) * random.nextDouble();
+            appendNumber(number);
             return this;
         }
 
@@ -161,7 +188,9 @@ public final class MathExpression {
             }
             String expressionSoFar = expression.toString();
             expression.setLength(0);
-            expression.append("max( ").append(expressionSoFar).append(", ").append(num).append(" ").append(") ");
+            expression.append("max( ").append(expressionSoFar).append(", ");
+            appendNumber(num);
+            expression.append(") ");
             return this;
         }
 
@@ -173,7 +202,9 @@ public final class MathExpression {
             }
             String expressionSoFar = expression.toString();
             expression.setLength(0);
-            expression.append("min( ").append(expressionSoFar).append(", ").append(num).append(" ").append(") ");
+            expression.append("min( ").append(expressionSoFar).append(", ");
+            appendNumber(num);
+            expression.append(") ");
             return this;
         }
 
@@ -183,7 +214,8 @@ public final class MathExpression {
             } else {
                 number *= num;
             }
-            expression.append("*").append(" ").append(num).append(" ");
+            expression.append("*").append(" ");
+            appendNumber(num);
             return this;
         }
 
@@ -197,7 +229,8 @@ public final class MathExpression {
             } else {
                 number *= num;
             }
-            expression.append("*").append(" ").append(num).append(" ");
+            expression.append("*").append(" ");
+            appendNumber(num);
             return this;
         }
 
@@ -210,7 +243,8 @@ public final class MathExpression {
             } else {
                 number /= num;
             }
-            expression.append("/").append(" ").append(num).append(" ");
+            expression.append("/").append(" ");
+            appendNumber(num);
             return this;
         }
 
@@ -227,7 +261,8 @@ public final class MathExpression {
             } else {
                 number /= num;
             }
-            expression.append("/").append(" ").append(num).append(" ");
+            expression.append("/").append(" ");
+            appendNumber(num);
             return this;
         }
 
@@ -237,7 +272,8 @@ public final class MathExpression {
             } else {
                 number %= num;
             }
-            expression.append("%").append(" ").append(num).append(" ");
+            expression.append("%").append(" ");
+            appendNumber(num);
             return this;
         }
 
@@ -251,19 +287,22 @@ public final class MathExpression {
             } else {
                 number %= num;
             }
-            expression.append("%").append(" ").append(num).append(" ");
+            expression.append("%").append(" ");
+            appendNumber(num);
             return this;
         }
 
         public Builder pow(double num) {
             if (inParenthesis) {
-                sideNumber = Math.pow(sideNumber, num);
+                sideNumber = approximate ? ApproxMath.pow(sideNumber, num) : Math.pow(sideNumber, num);
             } else {
-                number = Math.pow(number, num);
+                number = approximate ? ApproxMath.pow(number, num) : Math.pow(number, num);
             }
             String expressionSoFar = expression.toString();
             expression.setLength(0);
-            expression.append("pow( ").append(expressionSoFar).append(", ").append(num).append(" ").append(") ");
+            expression.append("pow( ").append(expressionSoFar).append(", ");
+            appendNumber(num);
+            expression.append(") ");
             return this;
         }
 
@@ -338,9 +377,9 @@ public final class MathExpression {
 
         public Builder log() {
             if (inParenthesis) {
-                sideNumber = Math.log(sideNumber);
+                sideNumber = approximate ? ApproxMath.log(sideNumber) : Math.log(sideNumber);
             } else {
-                number = Math.log(number);
+                number = approximate ? ApproxMath.log(number) : Math.log(number);
             }
             return this;
         }
@@ -356,27 +395,27 @@ public final class MathExpression {
 
         public Builder sin() {
             if (inParenthesis) {
-                sideNumber = Math.sin(sideNumber);
+                sideNumber = approximate ? ApproxMath.sin(sideNumber) : Math.sin(sideNumber);
             } else {
-                number = Math.sin(number);
+                number = approximate ? ApproxMath.sin(number) : Math.sin(number);
             }
             return this;
         }
 
         public Builder cos() {
             if (inParenthesis) {
-                sideNumber = Math.cos(sideNumber);
+                sideNumber = approximate ? ApproxMath.cos(sideNumber) : Math.cos(sideNumber);
             } else {
-                number = Math.cos(number);
+                number = approximate ? ApproxMath.cos(number) : Math.cos(number);
             }
             return this;
         }
 
         public Builder tan() {
             if (inParenthesis) {
-                sideNumber = Math.tan(sideNumber);
+                sideNumber = approximate ? ApproxMath.tan(sideNumber) : Math.tan(sideNumber);
             } else {
-                number = Math.tan(number);
+                number = approximate ? ApproxMath.tan(number) : Math.tan(number);
             }
             return this;
         }
@@ -410,9 +449,9 @@ public final class MathExpression {
 
         public Builder exp() {
             if (inParenthesis) {
-                sideNumber = Math.exp(sideNumber);
+                sideNumber = approximate ? ApproxMath.exp(sideNumber) : Math.exp(sideNumber);
             } else {
-                number = Math.exp(number);
+                number = approximate ? ApproxMath.exp(number) : Math.exp(number);
             }
             return this;
         }
@@ -426,6 +465,12 @@ public final class MathExpression {
             return this;
         }
 
+        // Switches sin, cos, tan, exp, log and pow to ApproxMath (bounded error, see its table) from here on
+        public Builder approximate(boolean enabled) {
+            approximate = enabled;
+            return this;
+        }
+
         // Remembers the NUMBER
         public Builder remember() {
             memory = number;
@@ -459,7 +504,7 @@ public final class MathExpression {
                 throw new RuntimeException("Number must be zero to set!");
             }
             number = num;
-            expression.append(num).append(" ");
+            appendNumber(num);
             return this;
         }
 
@@ -471,7 +516,7 @@ public final class MathExpression {
             if (condition.apply(number, num)) {
                 number = num;
             }
-            expression.append(num).append(" ");
+            appendNumber(num);
             return this;
         }
 
@@ -489,7 +534,8 @@ public final class MathExpression {
         public Builder openParenthesis(double num) {
             sideNumber = num;
             inParenthesis = true;
-            expression.append("(").append(" ").append(num).append(" ");
+            expression.append("(").append(" ");
+            appendNumber(num);
             openParenthesisIndex = expression.lastIndexOf("(");
             return this;
         }
@@ -534,7 +580,13 @@ public final class MathExpression {
             return this;
         }
 
+        // Plain patterns like "#,##0.00" are rounded HALF_EVEN (as DecimalFormat does) without a String round trip.
         public Builder format(String format) {
+            int fractionDigits = DecimalRounding.fractionDigitsOf(format);
+            if (fractionDigits >= 0) {
+                number = DecimalRounding.round(number, fractionDigits, RoundingMode.HALF_EVEN);
+                return this;
+            }
             DecimalFormat formater = new DecimalFormat(format);
             String num = formater.format(number);
             number = Double.parseDouble(num);
@@ -542,16 +594,24 @@ public final class MathExpression {
         }
 
         public Builder format(int decimalPlace) {
-            String pattern = "."
-                    + "#".repeat(decimalPlace);
-            DecimalFormat formater = new DecimalFormat(pattern);
-            String num = formater.format(number);
-            number = Double.parseDouble(num);
+            return format(decimalPlace, RoundingMode.HALF_EVEN);
+        }
+
+        public Builder format(int decimalPlace, RoundingMode mode) {
+            if (decimalPlace < 0) {
+                throw new IllegalArgumentException("Decimal place must not be negative!");
+            }
+            number = DecimalRounding.round(number, decimalPlace, mode);
             return this;
         }
 
         public MathExpression build() {
             return new MathExpression(this);
         }
+
+        // Writes the number and a separating space into the expression without a String per number
+        private void appendNumber(double num) {
+            expression.append(digits, 0, DoubleWriter.write(num, digits, 0)).append(" ");
+        }
     }
 }
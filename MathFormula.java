@@ -0,0 +1,523 @@
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compiled {@link MathExpression}: the same chain of operations, recorded once with named
+ * variables and replayed with {@link #evaluate(double...)} as many times as needed.
+ * <p>
+ * A formula is always backed by its binary encoding, so {@link #read(ByteBuffer)} over a file
+ * or memory-mapped region is zero-copy: it checks the header and operands once, then evaluates
+ * straight from the buffer. Layout (little endian, 8-byte aligned):
+ * <pre>
+ *  0  int    magic "MXF1"          16 int   code length in bytes
+ *  4  short  format version        20 int   variable table length in bytes
+ *  6  short  flags (0)             24 ...   constant pool, 8 bytes per double
+ *  8  int    total length (padded)    ...   code: opcode byte [+ u16 operand index]
+ * 12  short  constant count           ...   variable table: u16 UTF-8 length + bytes, per name
+ * 14  short  variable count           ...   zero padding to a multiple of 8
+ * </pre>
+ * Opcodes keep the operand kind in their top bits: 0x40 means a u16 operand follows, 0x80 means
+ * that operand indexes the variable table instead of the constant pool.
+ */
+public final class MathFormula {
+    public static final int MAGIC = 0x3146584D; // "MXF1" read as a little-endian int
+    public static final short VERSION = 1;
+
+    static final int HEADER_SIZE = 24;
+    private static final int WITH_OPERAND = 0x40;
+    private static final int VARIABLE = 0x80;
+    private static final int MAX_POOL_SIZE = 0xFFFF;
+
+    // Operations taking an operand (combine with WITH_OPERAND, and VARIABLE for variables)
+    private static final int SET = 1;
+    private static final int ADD = 2;
+    private static final int MINUS = 3;
+    private static final int MULTIPLY = 4;
+    private static final int DIVIDE = 5;
+    private static final int MOD = 6;
+    private static final int POW = 7;
+    private static final int MAX = 8;
+    private static final int MIN = 9;
+    private static final int OPEN_PARENTHESIS = 10;
+
+    // Operations on the current number
+    private static final int SQRT = 1;
+    private static final int ROUND = 2;
+    private static final int FLOOR = 3;
+    private static final int CEIL = 4;
+    private static final int ABS = 5;
+    private static final int CBRT = 6;
+    private static final int LOG = 7;
+    private static final int LOG10 = 8;
+    private static final int SIN = 9;
+    private static final int COS = 10;
+    private static final int TAN = 11;
+    private static final int SINH = 12;
+    private static final int COSH = 13;
+    private static final int TANH = 14;
+    private static final int EXP = 15;
+    private static final int TO_RADIANS = 16;
+    private static final int TO_DEGREES = 17;
+    private static final int CLOSE_AND_PLUS = 18;
+    private static final int CLOSE_AND_MINUS = 19;
+    private static final int CLOSE_AND_MULTIPLY = 20;
+    private static final int CLOSE_AND_DIVIDE = 21;
+
+    private final ByteBuffer buffer;
+    private final int constantCount;
+    private final int variableCount;
+    private final int codeStart;
+    private final int codeEnd;
+    private final int variablesStart;
+
+    private MathFormula(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.constantCount = buffer.getShort(12) & 0xFFFF;
+        this.variableCount = buffer.getShort(14) & 0xFFFF;
+        this.codeStart = HEADER_SIZE + constantCount * Double.BYTES;
+        this.codeEnd = codeStart + buffer.getInt(16);
+        this.variablesStart = codeEnd;
+    }
+
+    // Wraps an encoded formula without copying it; the buffer must not be modified afterwards.
+    public static MathFormula read(ByteBuffer source) {
+        ByteBuffer buffer = source.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not an encoded MathFormula!");
+        }
+        if (buffer.getShort(4) != VERSION) {
+            throw new IllegalArgumentException("Unsupported MathFormula version " + buffer.getShort(4) + "!");
+        }
+        int totalLength = buffer.getInt(8);
+        if (totalLength < HEADER_SIZE || totalLength > buffer.remaining()) {
+            throw new IllegalArgumentException("Truncated MathFormula!");
+        }
+        buffer.limit(totalLength);
+
+        MathFormula formula = new MathFormula(buffer);
+        int codeLength = buffer.getInt(16);
+        int variablesLength = buffer.getInt(20);
+        // Summed as longs, so a negative or huge length cannot wrap around into range
+        if (codeLength < 0 || variablesLength < 0
+                || (long) formula.codeStart + codeLength + variablesLength > totalLength) {
+            throw new IllegalArgumentException("Truncated MathFormula!");
+        }
+        formula.verifyCode();
+        formula.verifyVariables(formula.variablesStart + variablesLength);
+        return formula;
+    }
+
+    public static MathFormula read(MemorySegment segment) {
+        return read(segment.asByteBuffer());
+    }
+
+    // Read-only view of the encoded bytes, ready to be written to a channel
+    public ByteBuffer encoded() {
+        return buffer.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public int encodedSize() {
+        return buffer.limit();
+    }
+
+    public List<String> variables() {
+        List<String> names = new ArrayList<>(variableCount);
+        int position = variablesStart;
+        for (int i = 0; i < variableCount; i++) {
+            int length = buffer.getShort(position) & 0xFFFF;
+            byte[] bytes = new byte[length];
+            buffer.get(position + 2, bytes);
+            names.add(new String(bytes, StandardCharsets.UTF_8));
+            position += 2 + length;
+        }
+        return names;
+    }
+
+    // values are given in the order of variables()
+    public double evaluate(double... values) {
+        if (values.length != variableCount) {
+            throw new IllegalArgumentException("Expected " + variableCount + " variable values but got " + values.length + "!");
+        }
+
+        double number = 0;
+        double sideNumber = 0;
+        boolean inParenthesis = false;
+        int pc = codeStart;
+        while (pc < codeEnd) {
+            int opcode = buffer.get(pc++) & 0xFF;
+            if ((opcode & WITH_OPERAND) != 0) {
+                int index = buffer.getShort(pc) & 0xFFFF;
+                pc += 2;
+                double num = (opcode & VARIABLE) != 0 ? values[index] : buffer.getDouble(HEADER_SIZE + index * Double.BYTES);
+                int operation = opcode & ~(WITH_OPERAND | VARIABLE);
+                if (operation == OPEN_PARENTHESIS) {
+                    sideNumber = num;
+                    inParenthesis = true;
+                } else if (operation == SET) {
+                    number = num;
+                } else if (inParenthesis) {
+                    sideNumber = apply(operation, sideNumber, num);
+                } else {
+                    number = apply(operation, number, num);
+                }
+            } else if (opcode >= CLOSE_AND_PLUS) {
+                number = switch (opcode) {
+                    case CLOSE_AND_PLUS -> number + sideNumber;
+                    case CLOSE_AND_MINUS -> number - sideNumber;
+                    case CLOSE_AND_MULTIPLY -> number * sideNumber;
+                    default -> number / sideNumber;
+                };
+                sideNumber = 0;
+                inParenthesis = false;
+            } else if (inParenthesis) {
+                sideNumber = apply(opcode, sideNumber);
+            } else {
+                number = apply(opcode, number);
+            }
+        }
+        return number;
+    }
+
+    // Same semantics as the MathExpression.Builder methods, including the skipped division by zero.
+    private static double apply(int operation, double number, double num) {
+        return switch (operation) {
+            case ADD -> number + num;
+            case MINUS -> number - num;
+            case MULTIPLY -> number * num;
+            case DIVIDE -> num == 0 ? number : number / num;
+            case MOD -> number % num;
+            case POW -> Math.pow(number, num);
+            case MAX -> Math.max(number, num);
+            case MIN -> Math.min(number, num);
+            default -> throw new IllegalStateException("Unknown operation " + operation);
+        };
+    }
+
+    private static double apply(int operation, double number) {
+        return switch (operation) {
+            case SQRT -> Math.sqrt(number);
+            case ROUND -> Math.round(number);
+            case FLOOR -> Math.floor(number);
+            case CEIL -> Math.ceil(number);
+            case ABS -> Math.abs(number);
+            case CBRT -> Math.cbrt(number);
+            case LOG -> Math.log(number);
+            case LOG10 -> Math.log10(number);
+            case SIN -> Math.sin(number);
+            case COS -> Math.cos(number);
+            case TAN -> Math.tan(number);
+            case SINH -> Math.sinh(number);
+            case COSH -> Math.cosh(number);
+            case TANH -> Math.tanh(number);
+            case EXP -> Math.exp(number);
+            case TO_RADIANS -> Math.toRadians(number);
+            case TO_DEGREES -> Math.toDegrees(number);
+            default -> throw new IllegalStateException("Unknown operation " + operation);
+        };
+    }
+
+    // Checked once on load so evaluate() can trust every opcode and operand index.
+    // Every name length prefix and name must lie inside the variable table.
+    private void verifyVariables(int variablesEnd) {
+        int position = variablesStart;
+        for (int i = 0; i < variableCount; i++) {
+            if (position + 2 > variablesEnd) {
+                throw new IllegalArgumentException("Truncated MathFormula!");
+            }
+            position += 2 + (buffer.getShort(position) & 0xFFFF);
+            if (position > variablesEnd) {
+                throw new IllegalArgumentException("Truncated MathFormula!");
+            }
+        }
+    }
+
+    private void verifyCode() {
+        int pc = codeStart;
+        while (pc < codeEnd) {
+            int opcode = buffer.get(pc++) & 0xFF;
+            if ((opcode & WITH_OPERAND) != 0) {
+                int operation = opcode & ~(WITH_OPERAND | VARIABLE);
+                if (operation < SET || operation > OPEN_PARENTHESIS || pc + 2 > codeEnd) {
+                    throw new IllegalArgumentException("Corrupt MathFormula code at " + (pc - 1) + "!");
+                }
+                int index = buffer.getShort(pc) & 0xFFFF;
+                int limit = (opcode & VARIABLE) != 0 ? variableCount : constantCount;
+                if (index >= limit) {
+                    throw new IllegalArgumentException("Operand index " + index + " out of range at " + (pc - 1) + "!");
+                }
+                pc += 2;
+            } else if (opcode < SQRT || opcode > CLOSE_AND_DIVIDE) {
+                throw new IllegalArgumentException("Corrupt MathFormula code at " + (pc - 1) + "!");
+            }
+        }
+    }
+
+    public static class Builder {
+        private final Map<Long, Integer> constantIndex = new HashMap<>();
+        private final List<Double> constants = new ArrayList<>();
+        private final Map<String, Integer> variables = new LinkedHashMap<>();
+        private byte[] code = new byte[64];
+        private int codeLength;
+
+        public Builder() {
+        }
+
+        public Builder(double num) {
+            set(num);
+        }
+
+        public Builder(String variable) {
+            set(variable);
+        }
+
+        public Builder set(double num) {
+            return constant(SET, num);
+        }
+
+        public Builder set(String variable) {
+            return variable(SET, variable);
+        }
+
+        public Builder add(double num) {
+            return constant(ADD, num);
+        }
+
+        public Builder add(String variable) {
+            return variable(ADD, variable);
+        }
+
+        public Builder minus(double num) {
+            return constant(MINUS, num);
+        }
+
+        public Builder minus(String variable) {
+            return variable(MINUS, variable);
+        }
+
+        public Builder multiply(double num) {
+            return constant(MULTIPLY, num);
+        }
+
+        public Builder multiply(String variable) {
+            return variable(MULTIPLY, variable);
+        }
+
+        public Builder divide(double num) {
+            return constant(DIVIDE, num);
+        }
+
+        public Builder divide(String variable) {
+            return variable(DIVIDE, variable);
+        }
+
+        public Builder mod(double num) {
+            return constant(MOD, num);
+        }
+
+        public Builder mod(String variable) {
+            return variable(MOD, variable);
+        }
+
+        public Builder pow(double num) {
+            return constant(POW, num);
+        }
+
+        public Builder pow(String variable) {
+            return variable(POW, variable);
+        }
+
+        public Builder max(double num) {
+            return constant(MAX, num);
+        }
+
+        public Builder max(String variable) {
+            return variable(MAX, variable);
+        }
+
+        public Builder min(double num) {
+            return constant(MIN, num);
+        }
+
+        public Builder min(String variable) {
+            return variable(MIN, variable);
+        }
+
+        public Builder openParenthesis(double num) {
+            return constant(OPEN_PARENTHESIS, num);
+        }
+
+        public Builder openParenthesis(String variable) {
+            return variable(OPEN_PARENTHESIS, variable);
+        }
+
+        public Builder closeParenthesisAndPlus() {
+            return emit(CLOSE_AND_PLUS);
+        }
+
+        public Builder closeParenthesisAndMinus() {
+            return emit(CLOSE_AND_MINUS);
+        }
+
+        public Builder closeParenthesisAndMultiply() {
+            return emit(CLOSE_AND_MULTIPLY);
+        }
+
+        public Builder closeParenthesisAndDivide() {
+            return emit(CLOSE_AND_DIVIDE);
+        }
+
+        public Builder sqrt() {
+            return emit(SQRT);
+        }
+
+        public Builder round() {
+            return emit(ROUND);
+        }
+
+        public Builder floor() {
+            return emit(FLOOR);
+        }
+
+        public Builder ceil() {
+            return emit(CEIL);
+        }
+
+        public Builder abs() {
+            return emit(ABS);
+        }
+
+        public Builder cbrt() {
+            return emit(CBRT);
+        }
+
+        public Builder log() {
+            return emit(LOG);
+        }
+
+        public Builder log10() {
+            return emit(LOG10);
+        }
+
+        public Builder sin() {
+            return emit(SIN);
+        }
+
+        public Builder cos() {
+            return emit(COS);
+        }
+
+        public Builder tan() {
+            return emit(TAN);
+        }
+
+        public Builder sinh() {
+            return emit(SINH);
+        }
+
+        public Builder cosh() {
+            return emit(COSH);
+        }
+
+        public Builder tanh() {
+            return emit(TANH);
+        }
+
+        public Builder exp() {
+            return emit(EXP);
+        }
+
+        public Builder toRadians() {
+            return emit(TO_RADIANS);
+        }
+
+        public Builder toDegrees() {
+            return emit(TO_DEGREES);
+        }
+
+        public MathFormula build() {
+            byte[][] names = new byte[variables.size()][];
+            int variablesLength = 0;
+            int i = 0;
+            for (String name : variables.keySet()) {
+                names[i] = name.getBytes(StandardCharsets.UTF_8);
+                if (names[i].length > 0xFFFF) {
+                    throw new IllegalArgumentException("Variable name is too long: " + name);
+                }
+                variablesLength += 2 + names[i++].length;
+            }
+
+            int unpadded = HEADER_SIZE + constants.size() * Double.BYTES + codeLength + variablesLength;
+            int totalLength = (unpadded + 7) & ~7;
+            ByteBuffer buffer = ByteBuffer.allocate(totalLength).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC)
+                    .putShort(VERSION)
+                    .putShort((short) 0)
+                    .putInt(totalLength)
+                    .putShort((short) constants.size())
+                    .putShort((short) variables.size())
+                    .putInt(codeLength)
+                    .putInt(variablesLength);
+            for (double constant : constants) {
+                buffer.putDouble(constant);
+            }
+            buffer.put(code, 0, codeLength);
+            for (byte[] name : names) {
+                buffer.putShort((short) name.length).put(name);
+            }
+            return new MathFormula(buffer.clear());
+        }
+
+        private Builder constant(int operation, double num) {
+            Integer index = constantIndex.get(Double.doubleToRawLongBits(num));
+            if (index == null) {
+                if (constants.size() == MAX_POOL_SIZE) {
+                    throw new IllegalStateException("Constant pool is full!");
+                }
+                index = constants.size();
+                constants.add(num);
+                constantIndex.put(Double.doubleToRawLongBits(num), index);
+            }
+            return emit(operation | WITH_OPERAND, index);
+        }
+
+        private Builder variable(int operation, String name) {
+            Integer index = variables.get(name);
+            if (index == null) {
+                if (variables.size() == MAX_POOL_SIZE) {
+                    throw new IllegalStateException("Variable table is full!");
+                }
+                index = variables.size();
+                variables.put(name, index);
+            }
+            return emit(operation | WITH_OPERAND | VARIABLE, index);
+        }
+
+        private Builder emit(int opcode) {
+            ensureCapacity(1);
+            code[codeLength++] = (byte) opcode;
+            return this;
+        }
+
+        private Builder emit(int opcode, int operand) {
+            ensureCapacity(3);
+            code[codeLength++] = (byte) opcode;
+            code[codeLength++] = (byte) operand;
+            code[codeLength++] = (byte) (operand >>> 8);
+            return this;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (codeLength + extra > code.length) {
+                code = Arrays.copyOf(code, Math.max(code.length * 2, codeLength + extra));
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * A file of precompiled {@link MathFormula}s that is memory-mapped back instead of rebuilt.
+ * <p>
+ * Layout (little endian): int magic "MXS1", short version, short flags, int count, int reserved,
+ * then one (int offset, int length) directory entry per formula, then the formulas themselves,
+ * each in its own 8-byte aligned {@link MathFormula} encoding. Opening a store only maps the file;
+ * {@link #get(int)} slices the mapping and verifies that one formula on first access.
+ */
+public final class MathFormulaStore {
+    public static final int MAGIC = 0x3153584D; // "MXS1" read as a little-endian int
+    public static final short VERSION = 1;
+
+    private static final int HEADER_SIZE = 16;
+    private static final int ENTRY_SIZE = 8;
+
+    private final ByteBuffer buffer;
+    private final int count;
+    // Benign race: a formula may be verified twice, but MathFormula is immutable once built.
+    private final MathFormula[] loaded;
+
+    private MathFormulaStore(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.count = buffer.getInt(8);
+        this.loaded = new MathFormula[count];
+    }
+
+    public static void write(Path file, List<MathFormula> formulas) throws IOException {
+        int directorySize = HEADER_SIZE + formulas.size() * ENTRY_SIZE;
+        ByteBuffer directory = ByteBuffer.allocate(directorySize).order(ByteOrder.LITTLE_ENDIAN);
+        directory.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putInt(formulas.size()).putInt(0);
+
+        long offset = directorySize;
+        for (MathFormula formula : formulas) {
+            if (offset + formula.encodedSize() > Integer.MAX_VALUE) {
+                throw new IOException("Formula store larger than 2 GB is not supported!");
+            }
+            directory.putInt((int) offset).putInt(formula.encodedSize());
+            offset += formula.encodedSize();
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, directory.flip());
+            for (MathFormula formula : formulas) {
+                writeFully(channel, formula.encoded());
+            }
+        }
+    }
+
+    // Maps the file read-only; the mapping stays valid after the channel is closed.
+    public static MathFormulaStore open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public static MathFormulaStore read(ByteBuffer source) {
+        ByteBuffer buffer = source.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a MathFormula store!");
+        }
+        if (buffer.getShort(4) != VERSION) {
+            throw new IllegalArgumentException("Unsupported MathFormula store version " + buffer.getShort(4) + "!");
+        }
+        int count = buffer.getInt(8);
+        if (count < 0 || HEADER_SIZE + (long) count * ENTRY_SIZE > buffer.remaining()) {
+            throw new IllegalArgumentException("Truncated MathFormula store!");
+        }
+        return new MathFormulaStore(buffer);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public MathFormula get(int index) {
+        MathFormula formula = loaded[index];
+        if (formula == null) {
+            int entry = HEADER_SIZE + index * ENTRY_SIZE;
+            int offset = buffer.getInt(entry);
+            int length = buffer.getInt(entry + 4);
+            if (offset < 0 || length < 0 || offset > buffer.limit() - length) {
+                throw new IllegalArgumentException("Corrupt directory entry for formula " + index + "!");
+            }
+            formula = MathFormula.read(buffer.slice(offset, length));
+            loaded[index] = formula;
+        }
+        return formula;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        // (price * quantity - discount) * (1 + tax)
+        MathFormula total = new MathFormula.Builder("price")
+                .multiply("quantity")
+                .minus("discount")
+                .openParenthesis(1).add("tax").closeParenthesisAndMultiply()
+                .build();
+        MathFormula hypotenuse = new MathFormula.Builder("a").pow(2)
+                .openParenthesis("b").pow(2).closeParenthesisAndPlus()
+                .sqrt()
+                .build();
+
+        Path file = Path.of("formulas.mxs");
+        write(file, List.of(total, hypotenuse));
+
+        MathFormulaStore store = open(file);
+        MathFormula loadedTotal = store.get(0);
+        System.out.println(loadedTotal.variables() + " -> " + loadedTotal.evaluate(9.5, 3, 2, 0.2));
+        System.out.println(store.get(1).variables() + " -> " + store.get(1).evaluate(3, 4));
+    }
+}
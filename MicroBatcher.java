@@ -0,0 +1,98 @@
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Runs many tiny tasks in a {@link StructuredTaskScope} by forking chunks of them instead of one
+ * subtask each.
+ * <p>
+ * The chunk size adapts to the work: every chunk measures its time per item and folds it into an
+ * exponentially weighted moving average, and the next chunk is sized so that it runs for about
+ * the target duration. Tasks of a few microseconds end up in chunks of hundreds, so the cost of a
+ * fork is paid once per chunk; tasks that block for milliseconds get chunks of one and keep full
+ * parallelism. The average survives across calls, so later calls start with a good size.
+ */
+public final class MicroBatcher {
+    // Weight of the newest chunk in the moving average
+    private static final double ALPHA = 0.2;
+
+    private final long targetChunkNanos;
+    private final int maxChunk;
+    // Average nanoseconds per item, as double bits; 0 until the first chunk finishes
+    private final AtomicLong averageBits = new AtomicLong();
+
+    public MicroBatcher() {
+        this(Duration.ofMillis(1), 4_096);
+    }
+
+    public MicroBatcher(Duration targetChunk, int maxChunk) {
+        if (targetChunk.isNegative() || targetChunk.isZero() || maxChunk <= 0) {
+            throw new IllegalArgumentException("Chunk target and maximum size must be positive!");
+        }
+        this.targetChunkNanos = targetChunk.toNanos();
+        this.maxChunk = maxChunk;
+    }
+
+    public interface Task<I, R> {
+        R apply(I item) throws Exception;
+    }
+
+    // Applies task to every item; results are in item order. The first failure fails the call.
+    @SuppressWarnings("unchecked")
+    public <I, R> List<R> map(List<? extends I> items, Task<? super I, ? extends R> task) throws InterruptedException {
+        Object[] results = new Object[items.size()];
+        try (var scope = StructuredTaskScope.open(StructuredTaskScope.Joiner.<Void>awaitAllSuccessfulOrThrow())) {
+            int from = 0;
+            while (from < items.size() && !scope.isCancelled()) {
+                int start = from;
+                int end = Math.min(items.size(), start + chunkSize());
+                scope.fork(() -> {
+                    long began = System.nanoTime();
+                    for (int i = start; i < end; i++) {
+                        results[i] = task.apply(items.get(i));
+                    }
+                    record((double) (System.nanoTime() - began) / (end - start));
+                    return null;
+                });
+                from = end;
+            }
+            scope.join();
+        }
+        return (List<R>) Arrays.asList(results);
+    }
+
+    // Items per chunk for the next fork
+    public int chunkSize() {
+        double average = Double.longBitsToDouble(averageBits.get());
+        if (average <= 0) {
+            // Nothing measured yet: start small so the first measurements come quickly.
+            return 1;
+        }
+        return (int) Math.max(1, Math.min(maxChunk, targetChunkNanos / average));
+    }
+
+    private void record(double nanosPerItem) {
+        long current;
+        long next;
+        do {
+            current = averageBits.get();
+            double average = Double.longBitsToDouble(current);
+            next = Double.doubleToRawLongBits(average <= 0 ? nanosPerItem : average + ALPHA * (nanosPerItem - average));
+        } while (!averageBits.compareAndSet(current, next));
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        MicroBatcher batcher = new MicroBatcher();
+        List<Integer> numbers = IntStream.range(0, 1_000_000).boxed().toList();
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            List<Double> roots = batcher.map(numbers, n -> Math.sqrt(n));
+            System.out.printf("Round %d: %,d results in %d ms, chunk size now %d%n", round, roots.size(),
+                    (System.nanoTime() - start) / 1_000_000, batcher.chunkSize());
+        }
+    }
+}
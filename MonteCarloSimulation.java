@@ -0,0 +1,161 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.random.RandomGenerator;
+import java.util.random.RandomGeneratorFactory;
+
+/**
+ * Evaluates a {@link MathExpression} formula over N random draws on a fork/join pool.
+ * <p>
+ * The draws are split into a binary tree of ranges whose shape depends only on N and the chunk
+ * size. Every split also splits the random generator, so each leaf gets its own independent stream
+ * derived from the seed, and partial results are merged left to right up the same tree. The result
+ * is therefore bit-for-bit identical for a fixed seed whether the pool has 1 thread or 64.
+ * <p>
+ * Reductions are streamed: each leaf keeps count, mean and M2 (Welford), min/max and a
+ * {@link QuantileSketch}, so memory does not grow with N.
+ */
+public final class MonteCarloSimulation {
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 14;
+
+    // One draw of the simulation; build the expression with the generator it is given.
+    @FunctionalInterface
+    public interface Formula {
+        MathExpression evaluate(RandomGenerator random);
+    }
+
+    public record Result(long count, double mean, double variance, double min, double max, QuantileSketch sketch) {
+
+        public double standardDeviation() {
+            return Math.sqrt(variance);
+        }
+
+        // Standard error of the mean
+        public double standardError() {
+            return Math.sqrt(variance / count);
+        }
+
+        public double quantile(double q) {
+            return sketch.quantile(q);
+        }
+    }
+
+    private final String algorithm;
+    private final long seed;
+    private final int chunkSize;
+    private final ForkJoinPool pool;
+
+    public MonteCarloSimulation(long seed) {
+        this("SplittableRandom", seed, DEFAULT_CHUNK_SIZE, ForkJoinPool.commonPool());
+    }
+
+    // algorithm must name a splittable generator, e.g. "SplittableRandom" or "L64X128MixRandom"
+    public MonteCarloSimulation(String algorithm, long seed, int chunkSize, ForkJoinPool pool) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive!");
+        }
+        if (!(RandomGeneratorFactory.of(algorithm).create() instanceof RandomGenerator.SplittableGenerator)) {
+            throw new IllegalArgumentException(algorithm + " is not a splittable generator!");
+        }
+        this.algorithm = algorithm;
+        this.seed = seed;
+        this.chunkSize = chunkSize;
+        this.pool = pool;
+    }
+
+    public Result run(Formula formula, long draws) {
+        if (draws <= 0) {
+            throw new IllegalArgumentException("Number of draws must be positive!");
+        }
+        Accumulator total = pool.invoke(new DrawTask(formula, 0, draws, root()));
+        double variance = total.count > 1 ? total.m2 / (total.count - 1) : 0;
+        return new Result(total.count, total.mean, variance, total.min, total.max, total.sketch);
+    }
+
+    private RandomGenerator.SplittableGenerator root() {
+        return (RandomGenerator.SplittableGenerator) RandomGeneratorFactory.of(algorithm).create(seed);
+    }
+
+    private final class DrawTask extends RecursiveTask<Accumulator> {
+        private final Formula formula;
+        private final long from;
+        private final long to;
+        private final RandomGenerator.SplittableGenerator random;
+
+        DrawTask(Formula formula, long from, long to, RandomGenerator.SplittableGenerator random) {
+            this.formula = formula;
+            this.from = from;
+            this.to = to;
+            this.random = random;
+        }
+
+        @Override
+        protected Accumulator compute() {
+            if (to - from <= chunkSize) {
+                Accumulator accumulator = new Accumulator();
+                for (long i = from; i < to; i++) {
+                    accumulator.add(formula.evaluate(random).get());
+                }
+                return accumulator;
+            }
+
+            // Split the generators here, before forking, so the streams never depend on scheduling.
+            long middle = from + (to - from) / 2;
+            DrawTask left = new DrawTask(formula, from, middle, random.split());
+            DrawTask right = new DrawTask(formula, middle, to, random.split());
+            left.fork();
+            Accumulator rightResult = right.compute();
+            return left.join().merge(rightResult);
+        }
+    }
+
+    private static final class Accumulator {
+        private final QuantileSketch sketch = new QuantileSketch();
+        private long count;
+        private double mean;
+        private double m2;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+
+        void add(double value) {
+            count++;
+            double delta = value - mean;
+            mean += delta / count;
+            m2 += delta * (value - mean);
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            sketch.add(value);
+        }
+
+        // Chan et al. pairwise combination; always called as left.merge(right).
+        Accumulator merge(Accumulator right) {
+            long total = count + right.count;
+            double delta = right.mean - mean;
+            mean += delta * right.count / total;
+            m2 += right.m2 + delta * delta * ((double) count * right.count / total);
+            count = total;
+            min = Math.min(min, right.min);
+            max = Math.max(max, right.max);
+            sketch.merge(right.sketch);
+            return this;
+        }
+    }
+
+    public static void main(String[] args) {
+        // Estimates pi from the share of points of the unit square inside the quarter circle.
+        MonteCarloSimulation simulation = new MonteCarloSimulation(2024);
+        for (int threads : new int[]{1, 4}) {
+            MonteCarloSimulation pinned = new MonteCarloSimulation("SplittableRandom", 2024,
+                    DEFAULT_CHUNK_SIZE, new ForkJoinPool(threads));
+            Result result = pinned.run(random -> {
+                double x = random.nextDouble();
+                double y = random.nextDouble();
+                return new MathExpression.Builder(x * x + y * y <= 1 ? 4 : 0).build();
+            }, 10_000_000);
+            System.out.println(threads + " thread(s): pi ~ " + result.mean() + " +/- " + result.standardError());
+        }
+
+        // E[u^2] for u uniform in [-1, 1] is 1/3; the median of u^2 is 1/4.
+        Result squares = simulation.run(random -> new MathExpression.Builder().randomInRange(-1, 1, random).pow(2).build(), 1_000_000);
+        System.out.println("u^2 mean=" + squares.mean() + " p50=" + squares.quantile(0.5) + " p99=" + squares.quantile(0.99));
+    }
+}
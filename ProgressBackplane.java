@@ -0,0 +1,39 @@
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Pub/sub channel that carries progress updates between the nodes of the typing-race service.
+ * <p>
+ * Each node publishes the updates it receives in batches and subscribes once; every batch
+ * published by any node, its own included, is delivered to every subscribed node, which then
+ * fans it out to its own SSE clients. Ending a race travels the same way, so every node drops
+ * the race, in order with its updates. A broker-backed implementation (Redis pub/sub, a Kafka
+ * topic) maps {@link #publish} to one message per batch; {@link LoopbackBackplane} does the same
+ * inside one JVM.
+ */
+public interface ProgressBackplane extends AutoCloseable {
+
+    sealed interface Message permits Update, RaceEnded {
+        String raceId();
+    }
+
+    record Update(String raceId, String playerId, int progress) implements Message {
+    }
+
+    record RaceEnded(String raceId) implements Message {
+    }
+
+    interface Subscription extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    // Sends the batch to every subscribed node; must not block on slow subscribers.
+    void publish(List<? extends Message> batch);
+
+    // Batches are delivered to the listener one at a time, in the order they were published.
+    Subscription subscribe(Consumer<List<Message>> listener);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,151 @@
+/**
+ * Mergeable quantile sketch with a fixed relative error (the DDSketch scheme).
+ * <p>
+ * A value x is counted in bucket ceil(log_gamma |x|) with gamma = (1 + a) / (1 - a), so every quantile
+ * it returns is within a relative error a of the true one. Buckets are plain counters: merging two
+ * sketches just adds them, which makes the result independent of how the data was partitioned or
+ * in which order the parts were merged. Memory is fixed by the configured magnitude range
+ * (about 2,400 buckets per sign for 1% over [1e-9, 1e12]); smaller magnitudes count as zero and
+ * larger ones land in the last bucket.
+ */
+public final class QuantileSketch {
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+    public static final double DEFAULT_MIN_MAGNITUDE = 1e-9;
+    public static final double DEFAULT_MAX_MAGNITUDE = 1e12;
+
+    private final double relativeAccuracy;
+    private final double minMagnitude;
+    private final double maxMagnitude;
+    private final double gamma;
+    private final double inverseLogGamma;
+    private final int minIndex;
+    private final long[] positive;
+    private final long[] negative;
+    private long zeroCount;
+    private long count;
+
+    public QuantileSketch() {
+        this(DEFAULT_RELATIVE_ACCURACY, DEFAULT_MIN_MAGNITUDE, DEFAULT_MAX_MAGNITUDE);
+    }
+
+    public QuantileSketch(double relativeAccuracy, double minMagnitude, double maxMagnitude) {
+        if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+            throw new IllegalArgumentException("Relative accuracy must be between 0 and 1!");
+        }
+        if (!(minMagnitude > 0 && maxMagnitude > minMagnitude)) {
+            throw new IllegalArgumentException("Magnitude range must be positive and non-empty!");
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.minMagnitude = minMagnitude;
+        this.maxMagnitude = maxMagnitude;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.inverseLogGamma = 1 / Math.log(gamma);
+        this.minIndex = bucketIndex(minMagnitude);
+        int buckets = bucketIndex(maxMagnitude) - minIndex + 1;
+        this.positive = new long[buckets];
+        this.negative = new long[buckets];
+    }
+
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        double magnitude = Math.abs(value);
+        if (magnitude < minMagnitude) {
+            zeroCount++;
+        } else if (value > 0) {
+            positive[slot(magnitude)]++;
+        } else {
+            negative[slot(magnitude)]++;
+        }
+        count++;
+    }
+
+    // Adds other's counts into this sketch; both must have been created with the same parameters.
+    public void merge(QuantileSketch other) {
+        if (other.relativeAccuracy != relativeAccuracy || other.minMagnitude != minMagnitude
+                || other.maxMagnitude != maxMagnitude) {
+            throw new IllegalArgumentException("Cannot merge sketches with different parameters!");
+        }
+        for (int i = 0; i < positive.length; i++) {
+            positive[i] += other.positive[i];
+            negative[i] += other.negative[i];
+        }
+        zeroCount += other.zeroCount;
+        count += other.count;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public double relativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    // q in [0, 1]; NaN when the sketch is empty
+    public double quantile(double q) {
+        if (!(q >= 0 && q <= 1)) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1!");
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+
+        long rank = (long) (q * (count - 1));
+        long seen = 0;
+        for (int i = negative.length - 1; i >= 0; i--) {
+            seen += negative[i];
+            if (seen > rank) {
+                return -bucketValue(i);
+            }
+        }
+        seen += zeroCount;
+        if (seen > rank) {
+            return 0;
+        }
+        for (int i = 0; i < positive.length; i++) {
+            seen += positive[i];
+            if (seen > rank) {
+                return bucketValue(i);
+            }
+        }
+        return bucketValue(positive.length - 1);
+    }
+
+    // Adds n values already mapped to a slot; used to copy counts from ConcurrentQuantileSketch.
+    void addToSlot(int slot, boolean negativeValue, long n) {
+        (negativeValue ? negative : positive)[slot] += n;
+        count += n;
+    }
+
+    void addZeros(long n) {
+        zeroCount += n;
+        count += n;
+    }
+
+    double minMagnitude() {
+        return minMagnitude;
+    }
+
+    double maxMagnitude() {
+        return maxMagnitude;
+    }
+
+    int slot(double magnitude) {
+        return Math.min(bucketIndex(magnitude) - minIndex, positive.length - 1);
+    }
+
+    int buckets() {
+        return positive.length;
+    }
+
+    // Representative value of a slot: within relativeAccuracy of everything counted in it.
+    double bucketValue(int slot) {
+        return 2 * Math.pow(gamma, slot + minIndex) / (gamma + 1);
+    }
+
+    private int bucketIndex(double magnitude) {
+        return (int) Math.ceil(Math.log(magnitude) * inverseLogGamma);
+    }
+}
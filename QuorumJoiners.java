@@ -0,0 +1,167 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Quorum joiners for {@link StructuredTaskScope}: k-of-n successes, the k fastest successes and
+ * majority agreement.
+ * <p>
+ * Unlike a joiner that adds to a {@code Collections.synchronizedList} and checks its size, the
+ * success joiners never take a lock. A completing subtask claims a slot in a pre-sized array with
+ * one {@code getAndIncrement}, writes its result there, and then bumps a second counter that
+ * says how many slots are filled. Only the subtask that fills the k-th slot returns {@code true}
+ * from {@code onComplete}, which cancels every subtask still running; a success beyond the k-th
+ * never cancels, so the scope is not cancelled before all k results are written.
+ */
+public final class QuorumJoiners {
+    // Failures kept as suppressed exceptions; later ones are only counted.
+    private static final int MAX_RECORDED_FAILURES = 16;
+
+    private QuorumJoiners() {
+    }
+
+    // The first k successes out of n forks; gives up as soon as more than n - k have failed.
+    public static <T> StructuredTaskScope.Joiner<T, List<T>> kOfN(int k, int n) {
+        if (n < k) {
+            throw new IllegalArgumentException("Quorum " + k + " cannot be met by " + n + " subtasks!");
+        }
+        return new SuccessQuorum<>(k, n - k);
+    }
+
+    // The k fastest successes, in completion order, however many subtasks are forked.
+    public static <T> StructuredTaskScope.Joiner<T, List<T>> firstK(int k) {
+        return new SuccessQuorum<>(k, Integer.MAX_VALUE);
+    }
+
+    // The result that more than half of the n forks agree on (by equals).
+    public static <T> StructuredTaskScope.Joiner<T, T> majority(int n) {
+        return new Majority<>(n);
+    }
+
+    static class SuccessQuorum<T> implements StructuredTaskScope.Joiner<T, List<T>> {
+        private final int quorum;
+        private final int maxFailures;
+        private final Object[] slots;
+        private final AtomicInteger claimed = new AtomicInteger();
+        private final AtomicInteger filled = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        // Holds only failures already stored, so result() never meets a slot another failure has claimed but not written
+        private final List<Throwable> failures = new ArrayList<>();
+
+        SuccessQuorum(int quorum, int maxFailures) {
+            if (quorum <= 0) {
+                throw new IllegalArgumentException("Quorum must be positive!");
+            }
+            this.quorum = quorum;
+            this.maxFailures = maxFailures;
+            this.slots = new Object[quorum];
+        }
+
+        @Override
+        public boolean onComplete(StructuredTaskScope.Subtask<? extends T> subtask) {
+            switch (subtask.state()) {
+                case SUCCESS -> {
+                    int slot = claimed.getAndIncrement();
+                    if (slot >= quorum) {
+                        // Surplus success; must not cancel while earlier claimants may still be
+                        // writing their slots, because join() does not wait for them.
+                        return false;
+                    }
+                    slots[slot] = subtask.get();
+                    // 'filled' publishes the slot write; only whoever fills the last slot cancels the rest.
+                    return filled.incrementAndGet() == quorum;
+                }
+                case FAILED -> {
+                    int failure = failed.getAndIncrement();
+                    if (failure < MAX_RECORDED_FAILURES) {
+                        synchronized (failures) {
+                            failures.add(subtask.exception());
+                        }
+                    }
+                    return failure >= maxFailures;
+                }
+                case UNAVAILABLE -> {
+                }
+            }
+            return false;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public List<T> result() throws Throwable {
+            if (filled.get() >= quorum) {
+                return (List<T>) Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(slots, quorum)));
+            }
+            Exception ex = new Exception("Fewer than " + quorum + " tasks succeeded (" + failed.get() + " failed)");
+            synchronized (failures) {
+                failures.forEach(ex::addSuppressed);
+            }
+            throw ex;
+        }
+    }
+
+    static class Majority<T> implements StructuredTaskScope.Joiner<T, T> {
+        private static final Object NULL_VOTE = new Object();
+
+        private final int voters;
+        private final int needed;
+        private final ConcurrentHashMap<Object, AtomicInteger> votes;
+        private final AtomicReference<Object> winner = new AtomicReference<>();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final List<Throwable> failures = new ArrayList<>();
+
+        Majority(int voters) {
+            if (voters <= 0) {
+                throw new IllegalArgumentException("Number of voters must be positive!");
+            }
+            this.voters = voters;
+            this.needed = voters / 2 + 1;
+            this.votes = new ConcurrentHashMap<>(voters);
+        }
+
+        @Override
+        public boolean onComplete(StructuredTaskScope.Subtask<? extends T> subtask) {
+            switch (subtask.state()) {
+                case SUCCESS -> {
+                    Object vote = subtask.get() == null ? NULL_VOTE : subtask.get();
+                    if (votes.computeIfAbsent(vote, v -> new AtomicInteger()).incrementAndGet() == needed) {
+                        winner.set(vote);
+                        return true;
+                    }
+                }
+                case FAILED -> {
+                    int failure = failed.incrementAndGet();
+                    if (failure <= MAX_RECORDED_FAILURES) {
+                        synchronized (failures) {
+                            failures.add(subtask.exception());
+                        }
+                    }
+                    // Once this many have failed no value can reach a majority any more.
+                    return failure > voters - needed;
+                }
+                case UNAVAILABLE -> {
+                }
+            }
+            return false;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T result() throws Throwable {
+            Object vote = winner.get();
+            if (vote != null) {
+                return vote == NULL_VOTE ? null : (T) vote;
+            }
+            Exception ex = new Exception("No result reached a majority of " + needed + " out of " + voters);
+            synchronized (failures) {
+                failures.forEach(ex::addSuppressed);
+            }
+            throw ex;
+        }
+    }
+}
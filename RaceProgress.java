@@ -0,0 +1,37 @@
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The latest progress of every player of one race, as far as this node has heard.
+ * <p>
+ * A node keeps one for every race it receives updates for, whether or not anyone follows the race
+ * on this node, so a room opened later starts its snapshot from the whole race and not only from
+ * the updates after it opened. It outlives the race's rooms and is dropped when the race ends or
+ * has expired.
+ */
+public final class RaceProgress {
+    private final Map<String, Integer> players = new ConcurrentHashMap<>();
+    // Last update, in System.nanoTime()
+    private volatile long lastUpdated = System.nanoTime();
+
+    public void put(String playerId, int progress) {
+        players.put(playerId, progress);
+        lastUpdated = System.nanoTime();
+    }
+
+    public Integer get(String playerId) {
+        return players.get(playerId);
+    }
+
+    // Live read-only view
+    public Map<String, Integer> players() {
+        return Collections.unmodifiableMap(players);
+    }
+
+    // True when no player has moved for expiry.
+    public boolean isExpired(long now, Duration expiry) {
+        return now - lastUpdated >= expiry.toNanos();
+    }
+}
@@ -0,0 +1,190 @@
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * One typing race: its players' progress, its subscribers and its event stream.
+ * <p>
+ * Updates are coalesced per tick into "delta" events with consecutive IDs, encoded once and
+ * queued for every subscriber of this room only; the last events are kept for Last-Event-ID
+ * replay. The room's ticks run on the broadcaster worker it was assigned to, so rooms on
+ * different workers flush in parallel. A room with no subscribers reports itself idle once
+ * nothing has happened in it for a while, so its owner can close it. The players' progress lives
+ * in a {@link RaceProgress}, which may be older than the room and outlive it.
+ */
+public final class RaceRoom {
+
+    public record Settings(Duration tick, int batchSize, int queueCapacity,
+                           SseSubscriber.OverflowPolicy overflowPolicy, int replaySize) {
+    }
+
+    private record Snapshot(long id, Set<ResponseBodyEmitter.DataWithMediaType> event) {
+    }
+
+    private final String raceId;
+    private final ObjectMapper mapper;
+    private final Settings settings;
+    private final Map<String, SseSubscriber> clients = new ConcurrentHashMap<>();
+    private final RaceProgress progress;
+    private final CoalescingBroadcaster broadcaster;
+    // Recent delta events for Last-Event-ID replay; guarded by itself together with lastEventId
+    private final ReplayBuffer<Set<ResponseBodyEmitter.DataWithMediaType>> replay;
+    // Starts at the clock so IDs from before a restart are not mistaken for new ones
+    private long lastEventId = System.currentTimeMillis();
+    private volatile Snapshot snapshot;
+    // Last subscribe, update or unsubscribe, in System.nanoTime()
+    private volatile long lastActive = System.nanoTime();
+
+    public RaceRoom(String raceId, ObjectMapper mapper, ScheduledExecutorService worker, Settings settings) {
+        this(raceId, new RaceProgress(), mapper, worker, settings);
+    }
+
+    // Starts from the progress already known for the race, e.g. from before anyone subscribed on this node.
+    public RaceRoom(String raceId, RaceProgress progress, ObjectMapper mapper, ScheduledExecutorService worker,
+                    Settings settings) {
+        this.raceId = raceId;
+        this.progress = progress;
+        this.mapper = mapper;
+        this.settings = settings;
+        this.replay = new ReplayBuffer<>(settings.replaySize());
+        this.broadcaster = new CoalescingBroadcaster(worker, settings.tick(), settings.batchSize(), this::broadcastProgress);
+    }
+
+    public String raceId() {
+        return raceId;
+    }
+
+    public int subscribers() {
+        return clients.size();
+    }
+
+    public Collection<SseSubscriber> clients() {
+        return Collections.unmodifiableCollection(clients.values());
+    }
+
+    // Starts the client from the events it missed after lastEventId, or from a snapshot when there
+    // are too many of them or they are gone.
+    public SseEmitter subscribe(String playerId, SseEmitter emitter, String lastEventId) {
+        SseSubscriber subscriber = new SseSubscriber(playerId, emitter, settings.queueCapacity(),
+                settings.overflowPolicy(), this::snapshot, closed -> {
+                    clients.remove(playerId, closed);
+                    touch();
+                });
+        // Under the replay lock no delta can slip in between the catch-up events and the live ones.
+        synchronized (replay) {
+            List<Set<ResponseBodyEmitter.DataWithMediaType>> missed = missedEvents(lastEventId);
+            // More missed events than the queue holds would overflow it during the replay itself:
+            // dropped deltas, or a disconnect that the client's reconnect would repeat forever.
+            if (missed == null || missed.size() > settings.queueCapacity()) {
+                subscriber.offer(snapshot());
+            } else {
+                missed.forEach(subscriber::offer);
+            }
+            SseSubscriber previous = clients.put(playerId, subscriber);
+            if (previous != null) {
+                previous.close();
+            }
+        }
+        // It may have failed before it was in the map.
+        if (subscriber.isClosed()) {
+            clients.remove(playerId, subscriber);
+        }
+        return emitter;
+    }
+
+    public void updateProgress(String playerId, int progress) {
+        this.progress.put(playerId, progress);
+        progressChanged(playerId);
+    }
+
+    // Broadcasts a player whose progress was already written to this room's RaceProgress.
+    public void progressChanged(String playerId) {
+        broadcaster.markDirty(playerId);
+        touch();
+    }
+
+    // Marks the room as in use, e.g. right before subscribing to it.
+    public void touch() {
+        lastActive = System.nanoTime();
+    }
+
+    // True when nobody is subscribed and nothing has happened for idleTimeout.
+    public boolean isIdle(long now, Duration idleTimeout) {
+        return clients.isEmpty() && now - lastActive >= idleTimeout.toNanos();
+    }
+
+    // Flushes what is pending and disconnects everyone.
+    public void close() {
+        broadcaster.close();
+        clients.values().forEach(SseSubscriber::close);
+    }
+
+    // Sends only the players that changed since the last broadcast, as a "delta" event with the next ID.
+    // The event is encoded once and queued for every client; byte[] data is written as is.
+    // Sending happens on each client's own virtual thread, so a slow client delays nobody else.
+    private void broadcastProgress(Set<String> changed) {
+        Map<String, Integer> delta = new HashMap<>(changed.size() * 2);
+        for (String playerId : changed) {
+            delta.put(playerId, progress.get(playerId));
+        }
+        byte[] json = encode(delta);
+
+        synchronized (replay) {
+            long id = ++lastEventId;
+            Set<ResponseBodyEmitter.DataWithMediaType> event = event("delta", id, json);
+            replay.append(id, event);
+            for (SseSubscriber subscriber : clients.values()) {
+                subscriber.offer(event);
+            }
+        }
+    }
+
+    // Null when the client is new or too far behind for the replay buffer.
+    private List<Set<ResponseBodyEmitter.DataWithMediaType>> missedEvents(String lastEventId) {
+        if (lastEventId == null) {
+            return null;
+        }
+        try {
+            return replay.since(Long.parseLong(lastEventId.trim()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // The whole progress map as a "snapshot" event carrying the latest ID, encoded once per ID.
+    private Set<ResponseBodyEmitter.DataWithMediaType> snapshot() {
+        synchronized (replay) {
+            Snapshot current = snapshot;
+            if (current == null || current.id() != lastEventId) {
+                current = new Snapshot(lastEventId, event("snapshot", lastEventId, encode(progress.players())));
+                snapshot = current;
+            }
+            return current.event();
+        }
+    }
+
+    private static Set<ResponseBodyEmitter.DataWithMediaType> event(String name, long id, byte[] json) {
+        return SseEmitter.event().id(Long.toString(id)).name(name).data(json, MediaType.APPLICATION_JSON).build();
+    }
+
+    private byte[] encode(Map<String, Integer> progress) {
+        try {
+            return mapper.writeValueAsBytes(progress);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,408 @@
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.Disposable;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.publisher.SynchronousSink;
+
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// The WebFlux version of RealtimeTaskWithSseEmitter, with the same /typing-race endpoints and events.
+// A subscriber is a Flux<ServerSentEvent> subscribed by the server, not a servlet async context
+// plus a queue and a virtual thread, so a node holds far more open streams in the same memory.
+// Only one of the two is registered: this one in a reactive application, the other in a servlet one.
+//
+// Each race multicasts its delta events through one Sinks.Many. The sink emits best-effort, so
+// it never waits for a slow subscriber; each subscriber has its own bounded buffer instead. When
+// that buffer overflows the oldest deltas are dropped and the gap is filled with a snapshot,
+// so a slow client skips ahead rather than falling behind or slowing anyone else.
+@RestController
+@RequestMapping("/typing-race")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveTypingRace {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReactiveTypingRace.class);
+
+    static final String DEFAULT_RACE = "default";
+    private static final ServerSentEvent<String> HEARTBEAT = ServerSentEvent.<String>builder().comment("").build();
+
+    private final Map<String, Room> rooms = new ConcurrentHashMap<>();
+    // Every race this node has received updates for, with or without a room here
+    private final Map<String, RaceProgress> races = new ConcurrentHashMap<>();
+    private final ObjectMapper mapper;
+    private final Duration tick;
+    private final int batchSize;
+    private final int queueCapacity;
+    private final int replaySize;
+    // Broadcaster workers; each room ticks on one of them, picked by its race ID
+    private final ScheduledExecutorService[] workers;
+    // One timer for the heartbeats of all subscribers, not one per stream
+    private final ScheduledExecutorService heartbeatThread =
+            Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("typing-race-heartbeat").daemon().factory());
+    private final Sinks.Many<ServerSentEvent<String>> heartbeats = Sinks.many().multicast().directBestEffort();
+    private final ProgressBackplane backplane;
+    private final boolean ownsBackplane;
+    private final ProgressBackplane.Subscription subscription;
+    // Latest update per race and player not yet published, keyed by publishKey
+    private final Map<String, ProgressBackplane.Update> unpublished = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService publisherThread =
+            Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("typing-race-publisher").daemon().factory());
+    private final CoalescingBroadcaster publisher;
+    private final Duration roomIdleTimeout;
+    private final Duration raceExpiry;
+
+    // Same settings as the servlet version. There is no overflow policy: an overflowing client is
+    // always caught up with a snapshot. There is no idle timeout either: a stream ends when its
+    // write fails, and the heartbeats make a half-open connection fail. As in the servlet version,
+    // only a subscribe creates a room and a room without streams is dropped after roomIdle, while
+    // the race's progress is kept until it ends or has had no update for raceExpiry.
+    public ReactiveTypingRace(ObjectMapper mapper,
+                              ObjectProvider<ProgressBackplane> backplane,
+                              @Value("${typing-race.tick-millis:50}") long tickMillis,
+                              @Value("${typing-race.batch-size:500}") int batchSize,
+                              @Value("${typing-race.queue-capacity:16}") int queueCapacity,
+                              @Value("${typing-race.replay-size:1024}") int replaySize,
+                              @Value("${typing-race.workers:4}") int workers,
+                              @Value("${typing-race.heartbeat-seconds:15}") long heartbeatSeconds,
+                              @Value("${typing-race.room-idle-seconds:300}") long roomIdleSeconds,
+                              @Value("${typing-race.race-expiry-seconds:3600}") long raceExpirySeconds,
+                              @Value("${typing-race.publish-millis:10}") long publishMillis) {
+        if (workers <= 0 || queueCapacity <= 0 || heartbeatSeconds <= 0) {
+            throw new IllegalArgumentException("Workers, queue capacity and heartbeat must be positive!");
+        }
+        this.mapper = mapper;
+        this.tick = Duration.ofMillis(tickMillis);
+        this.batchSize = batchSize;
+        this.queueCapacity = queueCapacity;
+        this.replaySize = replaySize;
+        this.workers = new ScheduledExecutorService[workers];
+        for (int i = 0; i < workers; i++) {
+            this.workers[i] = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().name("typing-race-worker-" + i).daemon().factory());
+        }
+        heartbeatThread.scheduleAtFixedRate(() -> heartbeats.tryEmitNext(HEARTBEAT),
+                heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+        this.roomIdleTimeout = Duration.ofSeconds(roomIdleSeconds);
+        this.raceExpiry = Duration.ofSeconds(raceExpirySeconds);
+        heartbeatThread.scheduleWithFixedDelay(this::evictIdle, heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+        ProgressBackplane shared = backplane.getIfAvailable();
+        this.ownsBackplane = shared == null;
+        this.backplane = ownsBackplane ? new LoopbackBackplane() : shared;
+        this.subscription = this.backplane.subscribe(this::apply);
+        this.publisher = new CoalescingBroadcaster(publisherThread, Duration.ofMillis(publishMillis), batchSize, this::publish);
+    }
+
+    // EventSource sends Last-Event-ID by itself when it reconnects.
+    @GetMapping(value = "/subscribe/{playerId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> subscribe(@PathVariable String playerId,
+                                                   @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return subscribe(DEFAULT_RACE, playerId, lastEventId);
+    }
+
+    @GetMapping(value = "/{raceId}/subscribe/{playerId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> subscribe(@PathVariable String raceId, @PathVariable String playerId,
+                                                   @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        // Heartbeats that find no demand are dropped, never buffered.
+        return room(raceId).subscribe(playerId, lastEventId, heartbeats.asFlux().onBackpressureDrop());
+    }
+
+    @PostMapping("/progress/{playerId}/{progress}")
+    public void updateProgress(@PathVariable String playerId, @PathVariable int progress) {
+        updateProgress(DEFAULT_RACE, playerId, progress);
+    }
+
+    @PostMapping("/{raceId}/progress/{playerId}/{progress}")
+    public void updateProgress(@PathVariable String raceId, @PathVariable String playerId, @PathVariable int progress) {
+        String key = publishKey(raceId, playerId);
+        unpublished.put(key, new ProgressBackplane.Update(raceId, playerId, progress));
+        publisher.markDirty(key);
+    }
+
+    // Ends a race on every node: its streams are completed and its state is dropped.
+    @DeleteMapping("/{raceId}")
+    public void endRace(@PathVariable String raceId) {
+        closeRoom(raceId);
+        backplane.publish(List.of(new ProgressBackplane.RaceEnded(raceId)));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        publisher.close();
+        publisherThread.shutdownNow();
+        subscription.close();
+        if (ownsBackplane) {
+            backplane.close();
+        }
+        heartbeatThread.shutdownNow();
+        heartbeats.tryEmitComplete();
+        rooms.values().forEach(Room::close);
+        rooms.clear();
+        for (ScheduledExecutorService worker : workers) {
+            worker.shutdownNow();
+        }
+    }
+
+    private void publish(Set<String> keys) {
+        List<ProgressBackplane.Update> batch = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            ProgressBackplane.Update update = unpublished.remove(key);
+            if (update != null) {
+                batch.add(update);
+            }
+        }
+        if (!batch.isEmpty()) {
+            backplane.publish(batch);
+        }
+    }
+
+    // As in the servlet version: every update is kept in its race's progress, written before the
+    // room is looked up, and only races with a room here are broadcast.
+    private void apply(List<ProgressBackplane.Message> batch) {
+        for (ProgressBackplane.Message message : batch) {
+            switch (message) {
+                case ProgressBackplane.Update update -> {
+                    races.compute(update.raceId(), (id, race) -> {
+                        if (race == null) {
+                            race = new RaceProgress();
+                        }
+                        race.put(update.playerId(), update.progress());
+                        return race;
+                    });
+                    Room room = rooms.get(update.raceId());
+                    if (room != null) {
+                        room.progressChanged(update.playerId());
+                    }
+                }
+                case ProgressBackplane.RaceEnded ended -> {
+                    closeRoom(ended.raceId());
+                    races.remove(ended.raceId());
+                }
+            }
+        }
+    }
+
+    private void closeRoom(String raceId) {
+        Room room = rooms.remove(raceId);
+        if (room != null) {
+            room.close();
+        }
+    }
+
+    private static String publishKey(String raceId, String playerId) {
+        return raceId + '\u0000' + playerId;
+    }
+
+    // Touched under the map's lock, so the room cannot be evicted between here and the subscribe.
+    private Room room(String raceId) {
+        return rooms.compute(raceId, (id, room) -> {
+            if (room == null) {
+                room = new Room(races.computeIfAbsent(id, r -> new RaceProgress()),
+                        workers[Math.floorMod(id.hashCode(), workers.length)]);
+            }
+            room.touch();
+            return room;
+        });
+    }
+
+    // Runs on the heartbeat thread; closing a room also stops its ticker.
+    private void evictIdle() {
+        long now = System.nanoTime();
+        try {
+            for (String raceId : rooms.keySet()) {
+                Room[] evicted = new Room[1];
+                rooms.computeIfPresent(raceId, (id, room) -> {
+                    if (room.isIdle(now)) {
+                        evicted[0] = room;
+                        return null;
+                    }
+                    return room;
+                });
+                if (evicted[0] != null) {
+                    evicted[0].close();
+                }
+            }
+            // Under the room's lock, so no room can be opened on a race while it is forgotten.
+            for (String raceId : races.keySet()) {
+                rooms.compute(raceId, (id, room) -> {
+                    if (room == null) {
+                        races.computeIfPresent(id, (key, race) -> race.isExpired(now, raceExpiry) ? null : race);
+                    }
+                    return room;
+                });
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Evicting idle rooms and races failed", e);
+        }
+    }
+
+    /**
+     * One race: the reactive counterpart of {@link RaceRoom}. Deltas get consecutive IDs, are
+     * encoded once and emitted to every stream of the race through one multicast sink; the last
+     * ones are kept for Last-Event-ID replay.
+     */
+    private final class Room {
+        private record Event(long id, ServerSentEvent<String> sse) {
+        }
+
+        private final RaceProgress progress;
+        // Ends the previous stream of a player who subscribes again
+        private final Map<String, Sinks.Empty<Void>> players = new ConcurrentHashMap<>();
+        private final Sinks.Many<Event> deltas = Sinks.many().multicast().directBestEffort();
+        private final Sinks.Empty<Void> closed = Sinks.empty();
+        private final CoalescingBroadcaster broadcaster;
+        // Guarded by itself together with lastEventId; emissions to 'deltas' happen under it too
+        private final ReplayBuffer<Event> replay = new ReplayBuffer<>(replaySize);
+        // Starts at the clock so IDs from before a restart are not mistaken for new ones
+        private long lastEventId = System.currentTimeMillis();
+        private volatile Event snapshot;
+        // Last subscribe, update or unsubscribe, in System.nanoTime()
+        private volatile long lastActive = System.nanoTime();
+
+        Room(RaceProgress progress, ScheduledExecutorService worker) {
+            this.progress = progress;
+            this.broadcaster = new CoalescingBroadcaster(worker, tick, batchSize, this::broadcastProgress);
+        }
+
+        // The missed events (or a snapshot), then the live deltas, until the race ends or the
+        // player subscribes again.
+        Flux<ServerSentEvent<String>> subscribe(String playerId, String lastEventId, Flux<ServerSentEvent<String>> heartbeats) {
+            return Flux.defer(() -> {
+                Sinks.Empty<Void> replaced = Sinks.empty();
+                Sinks.Empty<Void> previous = players.put(playerId, replaced);
+                if (previous != null) {
+                    previous.tryEmitEmpty();
+                }
+                return events(lastEventId)
+                        .mergeWith(heartbeats)
+                        .takeUntilOther(Mono.firstWithSignal(replaced.asMono(), closed.asMono()))
+                        .doFinally(signal -> {
+                            players.remove(playerId, replaced);
+                            touch();
+                        });
+            });
+        }
+
+        // The player's progress is already in the race's RaceProgress.
+        void progressChanged(String playerId) {
+            broadcaster.markDirty(playerId);
+            touch();
+        }
+
+        void touch() {
+            lastActive = System.nanoTime();
+        }
+
+        boolean isIdle(long now) {
+            return players.isEmpty() && now - lastActive >= roomIdleTimeout.toNanos();
+        }
+
+        void close() {
+            broadcaster.close();
+            closed.tryEmitEmpty();
+        }
+
+        private Flux<ServerSentEvent<String>> events(String lastEventId) {
+            // Connected to the sink before the catch-up is taken, so a delta emitted while the
+            // catch-up is being sent waits in the buffer instead of being missed.
+            Disposable[] connection = new Disposable[1];
+            Flux<Event> buffered = deltas.asFlux()
+                    // A dropped delta shows up below as a gap in the IDs
+                    .onBackpressureBuffer(queueCapacity, dropped -> { }, BufferOverflowStrategy.DROP_OLDEST)
+                    .publish()
+                    .autoConnect(0, connected -> connection[0] = connected);
+            List<Event> catchUp;
+            // The last ID this stream has sent; a live delta is sent only if it is the next one
+            long[] delivered = new long[1];
+            synchronized (replay) {
+                List<Event> missed = missedEvents(lastEventId);
+                catchUp = missed == null ? List.of(snapshot()) : missed;
+                delivered[0] = this.lastEventId;
+            }
+            Flux<ServerSentEvent<String>> live = buffered
+                    .handle((Event event, SynchronousSink<ServerSentEvent<String>> out) -> {
+                        if (event.id() <= delivered[0]) {
+                            // Already covered by the catch-up or a snapshot
+                            return;
+                        }
+                        Event next = event.id() == delivered[0] + 1 ? event : snapshot();
+                        delivered[0] = next.id();
+                        out.next(next.sse());
+                    });
+            return Flux.fromIterable(catchUp).map(Event::sse).concatWith(live)
+                    // autoConnect does not disconnect by itself
+                    .doFinally(signal -> connection[0].dispose());
+        }
+
+        // Runs on the room's worker only, so emissions to the sink never overlap.
+        private void broadcastProgress(Set<String> changed) {
+            Map<String, Integer> delta = new HashMap<>(changed.size() * 2);
+            for (String playerId : changed) {
+                delta.put(playerId, progress.get(playerId));
+            }
+            String json = encode(delta);
+
+            synchronized (replay) {
+                long id = ++lastEventId;
+                Event event = new Event(id, event("delta", id, json));
+                replay.append(id, event);
+                // Fails only when nobody is subscribed, which is fine: the event is in the replay buffer.
+                deltas.tryEmitNext(event);
+            }
+        }
+
+        private List<Event> missedEvents(String lastEventId) {
+            if (lastEventId == null) {
+                return null;
+            }
+            try {
+                return replay.since(Long.parseLong(lastEventId.trim()));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        private Event snapshot() {
+            synchronized (replay) {
+                Event current = snapshot;
+                if (current == null || current.id() != lastEventId) {
+                    current = new Event(lastEventId, event("snapshot", lastEventId, encode(progress.players())));
+                    snapshot = current;
+                }
+                return current;
+            }
+        }
+    }
+
+    // Data is pre-encoded JSON; the SSE writer sends a String as is instead of encoding it again.
+    private static ServerSentEvent<String> event(String name, long id, String json) {
+        return ServerSentEvent.builder(json).id(Long.toString(id)).event(name).build();
+    }
+
+    private String encode(Map<String, Integer> progress) {
+        try {
+            return mapper.writeValueAsString(progress);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -43,43 +43,249 @@
  */
 
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+// Every race is a RaceRoom with its own players, subscribers and events, so an update only reaches
+// the clients of its own race. The paths without a race ID use the "default" race.
+// Only a subscribe creates a room, and a room nobody has followed for a while is dropped. The
+// progress of each race is kept apart from its room, from the first update until the race ends or
+// expires, so a room opened late still starts from the whole race.
+// Updates do not go to the rooms directly but through a ProgressBackplane, so with a shared broker
+// every node's subscribers see the updates posted to any node. Without a backplane bean the
+// in-memory LoopbackBackplane is used and the service runs as a single node.
+// ReactiveTypingRace serves the same endpoints in a WebFlux application.
 @RestController
 @RequestMapping("/typing-race")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class RealtimeTaskWithSseEmitter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RealtimeTaskWithSseEmitter.class);
 
-    private final Map<String, SseEmitter> clients = new ConcurrentHashMap<>();
-    private final Map<String, Integer> progressMap = new ConcurrentHashMap<>();
+    static final String DEFAULT_RACE = "default";
 
+    private final Map<String, RaceRoom> rooms = new ConcurrentHashMap<>();
+    // Every race this node has received updates for, with or without a room here
+    private final Map<String, RaceProgress> races = new ConcurrentHashMap<>();
+    private final ObjectMapper mapper;
+    private final RaceRoom.Settings settings;
+    // Broadcaster workers; each room ticks on one of them, picked by its race ID
+    private final ScheduledExecutorService[] workers;
+    private final ScheduledExecutorService reaperThread =
+            Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("typing-race-reaper").daemon().factory());
+    private final SubscriptionReaper reaper;
+    private final Duration roomIdleTimeout;
+    private final Duration raceExpiry;
+    private final ProgressBackplane backplane;
+    private final boolean ownsBackplane;
+    private final ProgressBackplane.Subscription subscription;
+    // Latest update per race and player not yet published, keyed by publishKey
+    private final Map<String, ProgressBackplane.Update> unpublished = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService publisherThread =
+            Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("typing-race-publisher").daemon().factory());
+    private final CoalescingBroadcaster publisher;
+
+    // Progress is broadcast at most once per tick, or as soon as batchSize players have changed.
+    // Each client gets its own queue of queueCapacity events, handled by overflowPolicy when full.
+    // The last replaySize events of each race are kept for clients that reconnect.
+    // Idle clients get a heartbeat comment; clients that accept nothing for idleTimeout are dropped.
+    // A room without subscribers is dropped after roomIdle without subscribes or updates.
+    // A race without a room is forgotten after raceExpiry without updates, unless it ends before.
+    // Updates are published to the backplane as one batch per publish tick, or per batchSize players.
+    public RealtimeTaskWithSseEmitter(ObjectMapper mapper,
+                                      ObjectProvider<ProgressBackplane> backplane,
+                                      @Value("${typing-race.tick-millis:50}") long tickMillis,
+                                      @Value("${typing-race.batch-size:500}") int batchSize,
+                                      @Value("${typing-race.queue-capacity:16}") int queueCapacity,
+                                      @Value("${typing-race.overflow-policy:CONFLATE}") SseSubscriber.OverflowPolicy overflowPolicy,
+                                      @Value("${typing-race.replay-size:1024}") int replaySize,
+                                      @Value("${typing-race.workers:4}") int workers,
+                                      @Value("${typing-race.heartbeat-seconds:15}") long heartbeatSeconds,
+                                      @Value("${typing-race.idle-timeout-seconds:60}") long idleTimeoutSeconds,
+                                      @Value("${typing-race.room-idle-seconds:300}") long roomIdleSeconds,
+                                      @Value("${typing-race.race-expiry-seconds:3600}") long raceExpirySeconds,
+                                      @Value("${typing-race.publish-millis:10}") long publishMillis) {
+        if (workers <= 0) {
+            throw new IllegalArgumentException("At least one broadcaster worker is needed!");
+        }
+        this.mapper = mapper;
+        this.settings = new RaceRoom.Settings(Duration.ofMillis(tickMillis), batchSize, queueCapacity, overflowPolicy, replaySize);
+        this.workers = new ScheduledExecutorService[workers];
+        for (int i = 0; i < workers; i++) {
+            this.workers[i] = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().name("typing-race-worker-" + i).daemon().factory());
+        }
+        this.reaper = new SubscriptionReaper(reaperThread, Duration.ofSeconds(heartbeatSeconds),
+                Duration.ofSeconds(idleTimeoutSeconds), () -> rooms.values().stream().flatMap(room -> room.clients().stream()));
+        this.roomIdleTimeout = Duration.ofSeconds(roomIdleSeconds);
+        this.raceExpiry = Duration.ofSeconds(raceExpirySeconds);
+        reaperThread.scheduleWithFixedDelay(this::evictIdle, heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+        ProgressBackplane shared = backplane.getIfAvailable();
+        this.ownsBackplane = shared == null;
+        this.backplane = ownsBackplane ? new LoopbackBackplane() : shared;
+        // Every node applies every batch to its own rooms, its own updates included.
+        this.subscription = this.backplane.subscribe(this::apply);
+        this.publisher = new CoalescingBroadcaster(publisherThread, Duration.ofMillis(publishMillis), batchSize, this::publish);
+    }
+
+    // EventSource sends Last-Event-ID by itself when it reconnects.
     @GetMapping("/subscribe/{playerId}")
-    public SseEmitter subscribe(@PathVariable String playerId) {
-        SseEmitter emitter = new SseEmitter(Long.MAX_VALUE);
-        clients.put(playerId, emitter);
-        emitter.onCompletion(() -> clients.remove(playerId));
-        emitter.onTimeout(() -> clients.remove(playerId));
-        return emitter;
+    public SseEmitter subscribe(@PathVariable String playerId,
+                                @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return subscribe(DEFAULT_RACE, playerId, lastEventId);
+    }
+
+    @GetMapping("/{raceId}/subscribe/{playerId}")
+    public SseEmitter subscribe(@PathVariable String raceId, @PathVariable String playerId,
+                                @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        // No servlet timeout: the reaper decides when a connection is dead.
+        return room(raceId).subscribe(playerId, new SseEmitter(Long.MAX_VALUE), lastEventId);
     }
 
     @PostMapping("/progress/{playerId}/{progress}")
     public void updateProgress(@PathVariable String playerId, @PathVariable int progress) {
-        progressMap.put(playerId, progress);
-        broadcastProgress();
+        updateProgress(DEFAULT_RACE, playerId, progress);
+    }
+
+    @PostMapping("/{raceId}/progress/{playerId}/{progress}")
+    public void updateProgress(@PathVariable String raceId, @PathVariable String playerId, @PathVariable int progress) {
+        String key = publishKey(raceId, playerId);
+        unpublished.put(key, new ProgressBackplane.Update(raceId, playerId, progress));
+        publisher.markDirty(key);
+    }
+
+    // Ends a race on every node: its subscribers are disconnected and its state is dropped.
+    @DeleteMapping("/{raceId}")
+    public void endRace(@PathVariable String raceId) {
+        closeRoom(raceId);
+        backplane.publish(List.of(new ProgressBackplane.RaceEnded(raceId)));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Publish what is pending before leaving the backplane.
+        publisher.close();
+        publisherThread.shutdownNow();
+        subscription.close();
+        if (ownsBackplane) {
+            backplane.close();
+        }
+        reaper.close();
+        reaperThread.shutdownNow();
+        rooms.values().forEach(RaceRoom::close);
+        rooms.clear();
+        for (ScheduledExecutorService worker : workers) {
+            worker.shutdownNow();
+        }
+    }
+
+    // Only the latest update of each player is still pending, so a batch carries each player once.
+    private void publish(Set<String> keys) {
+        List<ProgressBackplane.Update> batch = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            ProgressBackplane.Update update = unpublished.remove(key);
+            if (update != null) {
+                batch.add(update);
+            }
+        }
+        if (!batch.isEmpty()) {
+            backplane.publish(batch);
+        }
+    }
+
+    // Every update is kept in its race's progress; only races with a room here are broadcast.
+    // The progress is written before the room is looked up, so a room opened in between has it in its snapshot.
+    private void apply(List<ProgressBackplane.Message> batch) {
+        for (ProgressBackplane.Message message : batch) {
+            switch (message) {
+                case ProgressBackplane.Update update -> {
+                    races.compute(update.raceId(), (id, race) -> {
+                        if (race == null) {
+                            race = new RaceProgress();
+                        }
+                        race.put(update.playerId(), update.progress());
+                        return race;
+                    });
+                    RaceRoom room = rooms.get(update.raceId());
+                    if (room != null) {
+                        room.progressChanged(update.playerId());
+                    }
+                }
+                case ProgressBackplane.RaceEnded ended -> {
+                    closeRoom(ended.raceId());
+                    races.remove(ended.raceId());
+                }
+            }
+        }
+    }
+
+    private void closeRoom(String raceId) {
+        RaceRoom room = rooms.remove(raceId);
+        if (room != null) {
+            room.close();
+        }
     }
 
-    private void broadcastProgress() {
-        for (Map.Entry<String, SseEmitter> entry : clients.entrySet()) {
-            try {
-                entry.getValue().send(progressMap);
-            } catch (IOException e) {
-                entry.getValue().complete();
-                clients.remove(entry.getKey());
+    private static String publishKey(String raceId, String playerId) {
+        return raceId + '\u0000' + playerId;
+    }
+
+    // Touched under the map's lock, so the room cannot be evicted between here and the subscribe.
+    private RaceRoom room(String raceId) {
+        return rooms.compute(raceId, (id, room) -> {
+            if (room == null) {
+                room = new RaceRoom(id, races.computeIfAbsent(id, r -> new RaceProgress()), mapper,
+                        workers[Math.floorMod(id.hashCode(), workers.length)], settings);
+            }
+            room.touch();
+            return room;
+        });
+    }
+
+    // Runs on the reaper thread; closing a room also stops its ticker.
+    private void evictIdle() {
+        long now = System.nanoTime();
+        try {
+            for (String raceId : rooms.keySet()) {
+                RaceRoom[] evicted = new RaceRoom[1];
+                rooms.computeIfPresent(raceId, (id, room) -> {
+                    if (room.isIdle(now, roomIdleTimeout)) {
+                        evicted[0] = room;
+                        return null;
+                    }
+                    return room;
+                });
+                if (evicted[0] != null) {
+                    evicted[0].close();
+                }
             }
+            // Under the room's lock, so no room can be opened on a race while it is forgotten.
+            for (String raceId : races.keySet()) {
+                rooms.compute(raceId, (id, room) -> {
+                    if (room == null) {
+                        races.computeIfPresent(id, (key, race) -> race.isExpired(now, raceExpiry) ? null : race);
+                    }
+                    return room;
+                });
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Evicting idle rooms and races failed", e);
         }
     }
 }
@@ -139,21 +345,33 @@ public class RealtimeTaskWithSseEmitter {
         }
     </style>
     <script>
+        let raceId = new URLSearchParams(location.search).get("race") || "default";
         let playerId = "player" + Math.floor(Math.random() * 1000);
-        let eventSource = new EventSource(`/typing-race/subscribe/${playerId}`);
+        let eventSource = new EventSource(`/typing-race/${raceId}/subscribe/${playerId}`);
+
+        let progress = {};
 
-        eventSource.onmessage = function(event) {
-            let progress = JSON.parse(event.data);
+        // A snapshot replaces everything; a delta only carries the players that changed.
+        eventSource.addEventListener("snapshot", function(event) {
+            progress = JSON.parse(event.data);
+            render();
+        });
+        eventSource.addEventListener("delta", function(event) {
+            Object.assign(progress, JSON.parse(event.data));
+            render();
+        });
+
+        function render() {
             let progressDisplay = document.getElementById("progress");
             progressDisplay.innerHTML = "";
             for (let player in progress) {
                 progressDisplay.innerHTML += `<p>${player}: ${progress[player]}%</p>`;
             }
-        };
+        }
 
         function updateProgress() {
             let typedPercentage = document.getElementById("progressInput").value;
-            fetch(`/typing-race/progress/${playerId}/${typedPercentage}`, { method: "POST" });
+            fetch(`/typing-race/${raceId}/progress/${playerId}/${typedPercentage}`, { method: "POST" });
         }
     </script>
 </head>
@@ -0,0 +1,53 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ring buffer of the most recent events, keyed by consecutive event IDs, for replaying what a
+ * reconnecting SSE client missed (its {@code Last-Event-ID}).
+ * <p>
+ * IDs must be appended in steps of one, so the slot of an event is its ID modulo the capacity
+ * and a lookup needs no search. Memory is fixed at {@code capacity} events.
+ */
+public final class ReplayBuffer<E> {
+    private final Object[] events;
+    private long latestId;
+    private int size;
+
+    public ReplayBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive!");
+        }
+        this.events = new Object[capacity];
+    }
+
+    public synchronized void append(long id, E event) {
+        if (size > 0 && id != latestId + 1) {
+            throw new IllegalArgumentException("Event IDs must be consecutive: expected " + (latestId + 1) + " but got " + id + "!");
+        }
+        events[(int) Math.floorMod(id, (long) events.length)] = event;
+        latestId = id;
+        size = Math.min(size + 1, events.length);
+    }
+
+    /**
+     * The events after {@code lastId}, oldest first; empty if the client is up to date, and null
+     * when they are no longer all here (or {@code lastId} is not one of ours), which means the
+     * client needs a snapshot instead.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized List<E> since(long lastId) {
+        long oldestId = latestId - size + 1;
+        if (size == 0 || lastId < oldestId - 1 || lastId > latestId) {
+            return null;
+        }
+        List<E> missed = new ArrayList<>((int) (latestId - lastId));
+        for (long id = lastId + 1; id <= latestId; id++) {
+            missed.add((E) events[(int) Math.floorMod(id, (long) events.length)]);
+        }
+        return missed;
+    }
+
+    public synchronized long latestId() {
+        return latestId;
+    }
+}
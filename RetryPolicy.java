@@ -0,0 +1,178 @@
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Retries failed subtasks with jittered exponential backoff, limited by a retry budget per scope.
+ * <p>
+ * A joiner only sees a subtask after it has failed and cannot fork it again, so retrying happens
+ * inside the subtask: {@link Budget#wrap} turns a call into one that retries before it ever
+ * reports a failure to the scope's joiner. The n-th retry waits a random time between zero and
+ * {@code min(maxDelay, baseDelay * 2^(n-1))} ("full jitter"), so retries from many subtasks do not
+ * arrive together. All subtasks of one scope draw from one {@link Budget}; once it is spent,
+ * failures go straight to the joiner, which keeps a failing backend from receiving
+ * {@code maxAttempts} times the load. Retries are also skipped when the backoff would overrun the
+ * current {@link Deadline}.
+ * <pre>
+ *   RetryPolicy policy = new RetryPolicy.Builder().maxAttempts(4).budget(10).build();
+ *   try (var scope = StructuredTaskScope.open(Joiner.allSuccessfulOrThrow())) {
+ *       RetryPolicy.Budget retries = policy.newBudget();
+ *       scope.fork(retries.wrap(() -> backend.call(request)));
+ *       ...
+ * </pre>
+ */
+public final class RetryPolicy {
+    private final int maxAttempts;
+    private final long baseDelayNanos;
+    private final long maxDelayNanos;
+    private final int budget;
+    private final Predicate<? super Exception> retryable;
+
+    private RetryPolicy(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.baseDelayNanos = builder.baseDelay.toNanos();
+        this.maxDelayNanos = builder.maxDelay.toNanos();
+        this.budget = builder.budget;
+        this.retryable = builder.retryable;
+    }
+
+    // One budget per scope: every subtask wrapped by it shares its retries.
+    public Budget newBudget() {
+        return new Budget(budget);
+    }
+
+    // Random delay before the given retry (1 = first retry)
+    long backoffNanos(int retry) {
+        int doublings = retry - 1;
+        // baseDelay * 2^doublings without overflowing past maxDelay
+        long cap = doublings < 63 && baseDelayNanos <= maxDelayNanos >> doublings
+                ? baseDelayNanos << doublings
+                : maxDelayNanos;
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    public final class Budget {
+        private final AtomicInteger remaining;
+        private final LongAdder retries = new LongAdder();
+
+        private Budget(int retries) {
+            this.remaining = new AtomicInteger(retries);
+        }
+
+        public <T> Callable<T> wrap(Callable<? extends T> task) {
+            return () -> {
+                for (int attempt = 1; ; attempt++) {
+                    try {
+                        return task.call();
+                    } catch (InterruptedException ex) {
+                        // Cancelled by the scope: never retried.
+                        throw ex;
+                    } catch (Exception ex) {
+                        if (attempt >= maxAttempts || !retryable.test(ex)) {
+                            throw ex;
+                        }
+                        long delay = backoffNanos(attempt);
+                        if (!Deadline.current().hasTimeFor(Duration.ofNanos(delay)) || !take()) {
+                            throw ex;
+                        }
+                        retries.increment();
+                        TimeUnit.NANOSECONDS.sleep(delay);
+                    }
+                }
+            };
+        }
+
+        public int remaining() {
+            return remaining.get();
+        }
+
+        // Retries made so far
+        public long retries() {
+            return retries.sum();
+        }
+
+        private boolean take() {
+            for (int left = remaining.get(); left > 0; left = remaining.get()) {
+                if (remaining.compareAndSet(left, left - 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    public static class Builder {
+        private int maxAttempts = 3;
+        private Duration baseDelay = Duration.ofMillis(50);
+        private Duration maxDelay = Duration.ofSeconds(2);
+        private int budget = 10;
+        private Predicate<? super Exception> retryable = ex -> true;
+
+        // Including the first call
+        public Builder maxAttempts(int maxAttempts) {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("At least one attempt is needed!");
+            }
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        public Builder baseDelay(Duration baseDelay) {
+            this.baseDelay = baseDelay;
+            return this;
+        }
+
+        public Builder maxDelay(Duration maxDelay) {
+            this.maxDelay = maxDelay;
+            return this;
+        }
+
+        // Retries shared by all subtasks of one scope
+        public Builder budget(int budget) {
+            if (budget < 0) {
+                throw new IllegalArgumentException("Retry budget must not be negative!");
+            }
+            this.budget = budget;
+            return this;
+        }
+
+        public Builder retryIf(Predicate<? super Exception> retryable) {
+            this.retryable = retryable;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            if (baseDelay.isNegative() || maxDelay.compareTo(baseDelay) < 0) {
+                throw new IllegalArgumentException("Delays must satisfy 0 <= baseDelay <= maxDelay!");
+            }
+            return new RetryPolicy(this);
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        RetryPolicy policy = new RetryPolicy.Builder().maxAttempts(4).baseDelay(Duration.ofMillis(20)).budget(30).build();
+
+        try (var scope = StructuredTaskScope.open(StructuredTaskScope.Joiner.<String>allSuccessfulOrThrow())) {
+            Budget budget = policy.newBudget();
+            for (int i = 0; i < 100; i++) {
+                int request = i;
+                scope.fork(budget.wrap(() -> {
+                    // A flaky backend: one call in five fails.
+                    if (ThreadLocalRandom.current().nextInt(5) == 0) {
+                        throw new IllegalStateException("Backend unavailable for request " + request);
+                    }
+                    return "ok";
+                }));
+            }
+            scope.join();
+            System.out.println("All 100 succeeded after " + budget.retries() + " retries, " + budget.remaining() + " left");
+        } catch (StructuredTaskScope.FailedException ex) {
+            System.out.println("Gave up: " + ex.getCause().getMessage());
+        }
+    }
+}
@@ -1,3 +1,7 @@
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
 /*
 In Java, a Semaphore is a concurrency utility from the java.util.concurrent package used to control access to a shared resource by multiple threads.
 
@@ -31,7 +35,7 @@ class SemaphoreTest{
 }
 
 // Best Practise
-public class SafeResourcePool {
+class SafeResourcePool {
     private final Semaphore semaphore;
     private final String resourceName;
     
@@ -52,6 +56,15 @@ public class SafeResourcePool {
         }
     }
     
+    // For callers that take a permit on one thread and give it back on another.
+    public boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+        return semaphore.tryAcquire(timeout, unit);
+    }
+
+    public void release() {
+        semaphore.release();
+    }
+
     public int availablePermits() {
         return semaphore.availablePermits();
     }
@@ -0,0 +1,164 @@
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collapses concurrent calls with the same key into one execution, optionally caching the
+ * result for a short time.
+ * <p>
+ * The first caller for a key starts the call on its own virtual thread; callers that arrive
+ * while it runs wait for the same result. Each caller still belongs to its own scope: when a
+ * caller is interrupted (its scope was cancelled or timed out) it stops waiting and leaves the
+ * flight, and only when the last caller has left is the shared execution cancelled. Because the
+ * execution runs outside every caller's scope it does not see their {@link ScopedValue}s.
+ */
+public final class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, Flight> inFlight = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<K, Cached<V>> cache = new ConcurrentHashMap<>();
+    private final long ttlNanos;
+    // When the cache is next swept of expired entries, in System.nanoTime()
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime());
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder shared = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+
+    public SingleFlight() {
+        this(Duration.ZERO);
+    }
+
+    // A zero TTL disables the cache: results are only shared while the call is in flight.
+    public SingleFlight(Duration ttl) {
+        if (ttl.isNegative()) {
+            throw new IllegalArgumentException("TTL must not be negative!");
+        }
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    private record Cached<V>(V value, long expiresAt) {
+    }
+
+    public V call(K key, Callable<? extends V> loader) throws Exception {
+        Cached<V> cached = cache.get(key);
+        if (cached != null) {
+            if (cached.expiresAt() - System.nanoTime() > 0) {
+                cacheHits.increment();
+                return cached.value();
+            }
+            cache.remove(key, cached);
+        }
+
+        boolean[] started = {false};
+        Flight flight = inFlight.compute(key, (k, existing) -> {
+            if (existing != null && existing.join()) {
+                return existing;
+            }
+            started[0] = true;
+            return new Flight(k, loader);
+        });
+        if (started[0]) {
+            executions.increment();
+            Thread.ofVirtual().name("single-flight-" + key).start(flight);
+        } else {
+            shared.increment();
+        }
+
+        try {
+            return flight.get();
+        } catch (InterruptedException ex) {
+            flight.leave();
+            throw ex;
+        } catch (ExecutionException ex) {
+            throw ex.getCause() instanceof Exception cause ? cause : ex;
+        }
+    }
+
+    public void invalidate(K key) {
+        cache.remove(key);
+    }
+
+    // Loader calls actually made
+    public long executions() {
+        return executions.sum();
+    }
+
+    // Calls that waited for another caller's execution
+    public long shared() {
+        return shared.sum();
+    }
+
+    public long cacheHits() {
+        return cacheHits.sum();
+    }
+
+    // Entries are otherwise only dropped when their key is asked for again, so keys that are never
+    // asked for again would stay forever. One put per TTL clears them; at most the entries of the
+    // last two TTLs stay in the cache.
+    private void sweep(long now) {
+        long due = nextSweep.get();
+        if (now - due >= 0 && nextSweep.compareAndSet(due, now + ttlNanos)) {
+            cache.values().removeIf(cached -> cached.expiresAt() - now <= 0);
+        }
+    }
+
+    private final class Flight extends FutureTask<V> {
+        private final K key;
+        // Callers still waiting; once it drops to zero the flight is dead and cannot be joined.
+        private final AtomicInteger callers = new AtomicInteger(1);
+
+        Flight(K key, Callable<? extends V> loader) {
+            super(loader::call);
+            this.key = key;
+        }
+
+        boolean join() {
+            for (int count = callers.get(); count > 0; count = callers.get()) {
+                if (callers.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void leave() {
+            if (callers.decrementAndGet() == 0) {
+                cancel(true);
+            }
+        }
+
+        @Override
+        protected void done() {
+            inFlight.remove(key, this);
+            // Failures and cancellations are not cached.
+            if (ttlNanos > 0 && state() == State.SUCCESS) {
+                long now = System.nanoTime();
+                cache.put(key, new Cached<>(resultNow(), now + ttlNanos));
+                sweep(now);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        SingleFlight<String, String> weather = new SingleFlight<>(Duration.ofMillis(500));
+
+        try (var scope = StructuredTaskScope.open(StructuredTaskScope.Joiner.<String>allSuccessfulOrThrow())) {
+            for (int i = 0; i < 300; i++) {
+                scope.fork(() -> weather.call("Berlin", () -> {
+                    TimeUnit.MILLISECONDS.sleep(200); // The expensive backend call
+                    return "Berlin: 12°C";
+                }));
+            }
+            scope.join();
+        }
+        System.out.println("After burst: " + weather.executions() + " execution(s), " + weather.shared() + " shared");
+
+        weather.call("Berlin", () -> "not called, cached");
+        System.out.println("Cache hits: " + weather.cacheHits());
+    }
+}
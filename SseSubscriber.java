@@ -0,0 +1,145 @@
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * One SSE client with its own bounded outbound queue, drained by its own virtual thread.
+ * <p>
+ * {@link #offer} never blocks and never touches the connection, so a broadcast costs one queue
+ * insert per client however slow the client is. When the queue is full the
+ * {@link OverflowPolicy} decides what gives.
+ */
+public final class SseSubscriber {
+
+    public enum OverflowPolicy {
+        // Drop the oldest queued event to make room for the new one. With delta events the client
+        // misses those changes until the same players change again.
+        DROP_OLDEST,
+        // Replace everything queued with one snapshot of the latest state.
+        CONFLATE,
+        // Give up on the client; it can reconnect.
+        DISCONNECT
+    }
+
+    private final String id;
+    private final SseEmitter emitter;
+    private final ArrayBlockingQueue<Set<ResponseBodyEmitter.DataWithMediaType>> queue;
+    private final OverflowPolicy policy;
+    private final Supplier<Set<ResponseBodyEmitter.DataWithMediaType>> snapshot;
+    private final Consumer<SseSubscriber> onClose;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final LongAdder dropped = new LongAdder();
+    private final Thread drainer;
+    // System.nanoTime() of the last event the client accepted (or of the subscription)
+    private volatile long lastSentAt = System.nanoTime();
+
+    // snapshot supplies an event with the full current state, used when conflating.
+    public SseSubscriber(String id, SseEmitter emitter, int capacity, OverflowPolicy policy,
+                         Supplier<Set<ResponseBodyEmitter.DataWithMediaType>> snapshot, Consumer<SseSubscriber> onClose) {
+        this.id = id;
+        this.emitter = emitter;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.policy = policy;
+        this.snapshot = snapshot;
+        this.onClose = onClose;
+        this.drainer = Thread.ofVirtual().name("sse-" + id).unstarted(this::drain);
+        emitter.onCompletion(this::close);
+        emitter.onTimeout(this::close);
+        emitter.onError(e -> close());
+        drainer.start();
+    }
+
+    // Queues the event for this client; false if the client is (now) disconnected.
+    public boolean offer(Set<ResponseBodyEmitter.DataWithMediaType> event) {
+        if (closed.get()) {
+            return false;
+        }
+        if (queue.offer(event)) {
+            return true;
+        }
+        switch (policy) {
+            case DROP_OLDEST -> {
+                do {
+                    if (queue.poll() != null) {
+                        dropped.increment();
+                    }
+                } while (!queue.offer(event));
+            }
+            case CONFLATE -> {
+                // The snapshot already includes this event's changes.
+                Set<ResponseBodyEmitter.DataWithMediaType> latest = snapshot.get();
+                do {
+                    dropped.add(queue.size());
+                    queue.clear();
+                } while (!queue.offer(latest));
+            }
+            case DISCONNECT -> {
+                close();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Queues a keep-alive only when nothing else is waiting to go out.
+    public void heartbeat(Set<ResponseBodyEmitter.DataWithMediaType> comment) {
+        if (!closed.get() && queue.isEmpty()) {
+            queue.offer(comment);
+        }
+    }
+
+    // How long the client has not accepted anything
+    public long idleNanos(long now) {
+        return now - lastSentAt;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public SseEmitter emitter() {
+        return emitter;
+    }
+
+    // Events discarded by the overflow policy
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    // Never blocks, so it is safe under a room's lock. The drainer completes the emitter once it
+    // stops: complete() waits for the emitter's monitor, which a send to a stuck client holds.
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            queue.clear();
+            drainer.interrupt();
+            onClose.accept(this);
+        }
+    }
+
+    private void drain() {
+        try {
+            while (!closed.get()) {
+                emitter.send(queue.take());
+                lastSentAt = System.nanoTime();
+            }
+        } catch (IOException | IllegalStateException e) {
+            // The client went away (or the emitter was already completed).
+        } catch (InterruptedException e) {
+            // Closed
+        } finally {
+            close();
+            emitter.complete();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Keeps SSE connections honest with one periodic sweep over all subscribers, instead of a timer
+ * per client.
+ * <p>
+ * Every heartbeat interval, a subscriber with nothing queued gets an SSE comment. Proxies then
+ * see traffic, and a half-open connection fails its next write. A subscriber that has not
+ * accepted anything for the idle timeout is collected as dead. This covers a client that stopped
+ * reading, whose sends block instead of failing. All dead subscribers of a sweep are closed
+ * together after the scan, which also removes them from their rooms. Closing does not wait for
+ * the blocked send: each dead subscriber's own drainer completes its emitter once the send
+ * returns, so one stuck client cannot hold up the sweep or anything else on the scheduler.
+ */
+public final class SubscriptionReaper implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SubscriptionReaper.class);
+    private static final Set<ResponseBodyEmitter.DataWithMediaType> HEARTBEAT = SseEmitter.event().comment("").build();
+
+    private final Supplier<Stream<SseSubscriber>> subscribers;
+    private final long heartbeatNanos;
+    private final long idleTimeoutNanos;
+    private final ScheduledFuture<?> sweeper;
+
+    public SubscriptionReaper(ScheduledExecutorService scheduler, Duration heartbeat, Duration idleTimeout,
+                              Supplier<Stream<SseSubscriber>> subscribers) {
+        if (heartbeat.isNegative() || heartbeat.isZero() || idleTimeout.compareTo(heartbeat) <= 0) {
+            throw new IllegalArgumentException("Heartbeat must be positive and shorter than the idle timeout!");
+        }
+        this.subscribers = subscribers;
+        this.heartbeatNanos = heartbeat.toNanos();
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.sweeper = scheduler.scheduleWithFixedDelay(this::sweep, heartbeatNanos, heartbeatNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // Returns the number of subscribers closed as dead.
+    public int sweep() {
+        long now = System.nanoTime();
+        List<SseSubscriber> dead = new ArrayList<>();
+        try {
+            subscribers.get().forEach(subscriber -> {
+                long idle = subscriber.idleNanos(now);
+                if (idle >= idleTimeoutNanos) {
+                    dead.add(subscriber);
+                } else if (idle >= heartbeatNanos) {
+                    subscriber.heartbeat(HEARTBEAT);
+                }
+            });
+            dead.forEach(SseSubscriber::close);
+        } catch (RuntimeException e) {
+            LOGGER.error("Subscription sweep failed", e);
+        }
+        return dead.size();
+    }
+
+    @Override
+    public void close() {
+        sweeper.cancel(false);
+    }
+}
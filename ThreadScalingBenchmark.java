@@ -0,0 +1,238 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jdk.jfr.consumer.RecordingStream;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.runner.IterationType;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sweeps the concurrency utilities over growing thread counts: platform threads from 1 up to the
+ * number of cores, virtual threads from 1 up to 100k.
+ * <p>
+ * One benchmark invocation is a round: {@code concurrency} tasks run {@link #OPERATIONS_PER_TASK}
+ * operations each, and every operation's latency goes into a {@link LatencyHistogram}. JMH reports
+ * rounds/s plus the {@code operations} counter as ops/s; at the end of each configuration the p50,
+ * p99 and p99.9 latencies and the number of {@code jdk.VirtualThreadPinned} JFR events seen in the
+ * measurement iterations (warmup excluded) are printed
+ * and appended to thread-scaling.csv. A round with a failed operation fails the benchmark.
+ * <p>
+ * BROADCAST_ENQUEUE times {@link RaceRoom#updateProgress} with 100 subscribers: encoding the
+ * event and queueing it for every subscriber. Delivery runs later on each subscriber's own
+ * virtual thread and is not part of the latency. Run it through BenchMark's main, e.g.
+ * <pre>
+ *   java --enable-preview -jar jmh/target/benchmarks.jar "ThreadScaling" -p workload=POOL
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public abstract class ThreadScalingBenchmark {
+    static final int OPERATIONS_PER_TASK = 10;
+    private static final Path CSV = Path.of("thread-scaling.csv");
+
+    public enum Workload {
+        POOL, SCOPE, BROADCAST_ENQUEUE
+    }
+
+    @Param({"POOL", "SCOPE", "BROADCAST_ENQUEUE"})
+    public Workload workload;
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LongAdder pinnedEvents = new LongAdder();
+    // Only measurement iterations are recorded; warmup samples carry JIT and lock-inflation outliers
+    private volatile boolean measuring;
+    private RecordingStream pinning;
+    private ExecutorService executor;
+    private SafeResourcePool pool;
+    private ScheduledExecutorService worker;
+    private RaceRoom room;
+    private int concurrency;
+
+    // Number of concurrent tasks per round
+    abstract int concurrency();
+
+    abstract ExecutorService newExecutor(int concurrency);
+
+    abstract String threadKind();
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Operations {
+        public long operations;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        concurrency = concurrency();
+        executor = newExecutor(concurrency);
+        pool = new SafeResourcePool("scaling", Runtime.getRuntime().availableProcessors());
+        ObjectMapper mapper = new ObjectMapper();
+        worker = Executors.newSingleThreadScheduledExecutor();
+        room = BenchMark.SseBroadcastBenchMark.newRoom(mapper, worker);
+        for (int i = 0; i < 100; i++) {
+            room.subscribe("spectator-" + i, new BenchMark.SseBroadcastBenchMark.NullSseEmitter(mapper), null);
+        }
+
+        latencies.reset();
+        pinnedEvents.reset();
+        pinning = new RecordingStream();
+        pinning.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO);
+        pinning.onEvent("jdk.VirtualThreadPinned", event -> {
+            if (measuring) {
+                pinnedEvents.increment();
+            }
+        });
+        pinning.startAsync();
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration(IterationParams iteration) {
+        measuring = iteration.getType() == IterationType.MEASUREMENT;
+    }
+
+    @Benchmark
+    public void round(Operations operations) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(concurrency);
+        // Exceptions thrown on the executor's threads never reach JMH, so they are carried back here
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        for (int i = 0; i < concurrency; i++) {
+            int task = i;
+            executor.execute(() -> {
+                try {
+                    for (int op = 0; op < OPERATIONS_PER_TASK; op++) {
+                        long start = System.nanoTime();
+                        runOnce(task, op);
+                        if (measuring) {
+                            latencies.record(System.nanoTime() - start);
+                        }
+                    }
+                } catch (Exception ex) {
+                    failure.compareAndSet(null, ex);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        if (failure.get() != null) {
+            throw new IllegalStateException("A task of this round failed!", failure.get());
+        }
+        operations.operations += (long) concurrency * OPERATIONS_PER_TASK;
+    }
+
+    private void runOnce(int task, int op) throws Exception {
+        switch (workload) {
+            case POOL -> pool.useResource(() -> {
+                // Simulated call on the limited resource: a little CPU and a short blocking wait.
+                Blackhole.consumeCPU(100);
+                LockSupport.parkNanos(20_000);
+                return null;
+            });
+            case SCOPE -> {
+                try (var scope = StructuredTaskScope.open(StructuredTaskScope.Joiner.<Integer>allSuccessfulOrThrow())) {
+                    for (int i = 0; i < 4; i++) {
+                        int value = i;
+                        scope.fork(() -> {
+                            LockSupport.parkNanos(20_000);
+                            return value;
+                        });
+                    }
+                    scope.join();
+                }
+            }
+            case BROADCAST_ENQUEUE -> room.updateProgress("player-" + (task % 16), op * 10);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        room.close();
+        worker.shutdownNow();
+        pinning.stop();
+        pinning.close();
+
+        String line = String.format("%s,%s,%d,%d,%.1f,%.1f,%.1f,%d", threadKind(), workload, concurrency,
+                latencies.count(), latencies.percentile(50) / 1e3, latencies.percentile(99) / 1e3,
+                latencies.percentile(99.9) / 1e3, pinnedEvents.sum());
+        System.out.println();
+        System.out.println("kind,workload,concurrency,operations,p50_us,p99_us,p999_us,pinned_events");
+        System.out.println(line);
+
+        if (Files.notExists(CSV)) {
+            Files.writeString(CSV, "kind,workload,concurrency,operations,p50_us,p99_us,p999_us,pinned_events\n");
+        }
+        Files.writeString(CSV, line + "\n", StandardOpenOption.APPEND);
+    }
+
+    // "C" is the number of cores, "C/2" half of it, anything else a plain number.
+    static int resolve(String count) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        if (count.equals("C")) {
+            return cores;
+        }
+        if (count.startsWith("C/")) {
+            return Math.max(1, cores / Integer.parseInt(count.substring(2)));
+        }
+        return Integer.parseInt(count);
+    }
+
+    public static class PlatformThreadScaling extends ThreadScalingBenchmark {
+        @Param({"1", "2", "4", "C/4", "C/2", "C"})
+        public String threads;
+
+        @Override
+        int concurrency() {
+            return resolve(threads);
+        }
+
+        // A fixed pool of exactly 'concurrency' platform threads, reused across rounds.
+        @Override
+        ExecutorService newExecutor(int concurrency) {
+            return Executors.newFixedThreadPool(concurrency);
+        }
+
+        @Override
+        String threadKind() {
+            return "platform";
+        }
+    }
+
+    public static class VirtualThreadScaling extends ThreadScalingBenchmark {
+        @Param({"1", "10", "100", "1000", "10000", "100000"})
+        public String threads;
+
+        @Override
+        int concurrency() {
+            return resolve(threads);
+        }
+
+        // A new virtual thread per task, as a server would do per request.
+        @Override
+        ExecutorService newExecutor(int concurrency) {
+            return Executors.newVirtualThreadPerTaskExecutor();
+        }
+
+        @Override
+        String threadKind() {
+            return "virtual";
+        }
+    }
+}
@@ -0,0 +1,330 @@
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A {@link StructuredTaskScope} that records where the time went.
+ * <p>
+ * Every scope and every named subtask becomes a {@link Span} with its fork, start and end time
+ * and final state (the timings {@code StructuredConcurrencyTest.TaskResponse} carries by hand).
+ * The current span is bound to {@link #CURRENT}, a {@link ScopedValue}, so a scope opened inside
+ * a subtask becomes that subtask's child and the spans form the request's scope tree. Each
+ * finished subtask is also committed as a {@code structured.Subtask} JFR event. A trace can be given
+ * a {@link Latencies} registry, which then gets the run time of each successful subtask in a
+ * per-task-name {@link LatencyHistogram}.
+ * <pre>
+ *   TracedScope.trace("checkout", latencies, () -> checkout(order), span -> log.info(span.render()));
+ * </pre>
+ */
+public final class TracedScope<T, R> implements AutoCloseable {
+    public static final ScopedValue<Span> CURRENT = ScopedValue.newInstance();
+
+    private final StructuredTaskScope<T, R> scope;
+    private final Span span;
+
+    private TracedScope(StructuredTaskScope<T, R> scope, Span span) {
+        this.scope = scope;
+        this.span = span;
+    }
+
+    public enum Kind {
+        REQUEST, SCOPE, TASK
+    }
+
+    // Runs op as the root of a trace and hands the finished span tree to exporter, even on failure.
+    public static <V, X extends Throwable> V trace(String name, ScopedValue.CallableOp<? extends V, X> op,
+                                                   Consumer<Span> exporter) throws X {
+        return trace(name, null, op, exporter);
+    }
+
+    // Same, and records the run time of every successful subtask of the trace into latencies.
+    public static <V, X extends Throwable> V trace(String name, Latencies latencies, ScopedValue.CallableOp<? extends V, X> op,
+                                                   Consumer<Span> exporter) throws X {
+        Span root = new Span(Kind.REQUEST, name, null, latencies);
+        root.started();
+        String state = "FAILED";
+        try {
+            V result = ScopedValue.where(CURRENT, root).call(op);
+            state = "SUCCESS";
+            return result;
+        } finally {
+            root.finished(state);
+            exporter.accept(root);
+        }
+    }
+
+    public static <T, R> TracedScope<T, R> open(String name, StructuredTaskScope.Joiner<? super T, ? extends R> joiner) {
+        return open(name, joiner, Function.identity());
+    }
+
+    public static <T, R> TracedScope<T, R> open(String name, StructuredTaskScope.Joiner<? super T, ? extends R> joiner,
+                                                Function<StructuredTaskScope.Configuration, StructuredTaskScope.Configuration> config) {
+        Span span = new Span(Kind.SCOPE, name, CURRENT.orElse(null));
+        span.started();
+        return new TracedScope<>(StructuredTaskScope.open(joiner, config), span);
+    }
+
+    public <U extends T> StructuredTaskScope.Subtask<U> fork(String name, Callable<? extends U> task) {
+        Span child = new Span(Kind.TASK, name, span);
+        return scope.fork(() -> {
+            child.started();
+            SubtaskEvent event = new SubtaskEvent();
+            event.begin();
+            String state = "FAILED";
+            try {
+                U result = ScopedValue.where(CURRENT, child).call(task::call);
+                state = "SUCCESS";
+                return result;
+            } catch (InterruptedException ex) {
+                state = scope.isCancelled() ? "CANCELLED" : state;
+                throw ex;
+            } finally {
+                child.finished(state);
+                // Failed and cancelled runs would mix their own timings into the normal ones.
+                if (child.latencies != null && state.equals("SUCCESS")) {
+                    child.latencies.record(name, child.runNanos());
+                }
+                event.end();
+                if (event.shouldCommit()) {
+                    event.scope = span.name;
+                    event.task = name;
+                    event.queued = child.queuedNanos();
+                    event.state = state;
+                    event.commit();
+                }
+            }
+        });
+    }
+
+    public R join() throws InterruptedException {
+        try {
+            return scope.join();
+        } finally {
+            span.finished(scope.isCancelled() ? "CANCELLED" : "JOINED");
+        }
+    }
+
+    public Span span() {
+        return span;
+    }
+
+    @Override
+    public void close() {
+        scope.close();
+        span.finished("CLOSED");
+    }
+
+    /**
+     * Run times (start to end) of successful subtasks by task name. At most {@code maxNames} names
+     * get a histogram; subtasks with a name beyond that are not recorded, so names built from
+     * request data cannot grow it without bound.
+     */
+    public static final class Latencies {
+        private final int maxNames;
+        private final Map<String, LatencyHistogram> byName = new ConcurrentHashMap<>();
+
+        public Latencies(int maxNames) {
+            if (maxNames <= 0) {
+                throw new IllegalArgumentException("Max names must be positive!");
+            }
+            this.maxNames = maxNames;
+        }
+
+        void record(String name, long nanos) {
+            LatencyHistogram histogram = byName.get(name);
+            if (histogram == null) {
+                if (byName.size() >= maxNames) {
+                    return;
+                }
+                histogram = byName.computeIfAbsent(name, n -> new LatencyHistogram());
+            }
+            histogram.record(nanos);
+        }
+
+        public Map<String, LatencyHistogram> byName() {
+            return Collections.unmodifiableMap(byName);
+        }
+    }
+
+    /**
+     * One request, scope or subtask. Times are {@code System.nanoTime()} values; a subtask that
+     * never started (cancelled first) has no start time and the state "NOT_STARTED".
+     */
+    public static final class Span {
+        private final Kind kind;
+        private final String name;
+        private final long forkedAt = System.nanoTime();
+        private final ConcurrentLinkedQueue<Span> children = new ConcurrentLinkedQueue<>();
+        // Shared by the whole trace; null when the trace records no latencies
+        private final Latencies latencies;
+        private volatile long startedAt;
+        private volatile long endedAt;
+        private volatile String state = "NOT_STARTED";
+
+        Span(Kind kind, String name, Span parent) {
+            this(kind, name, parent, parent == null ? null : parent.latencies);
+        }
+
+        private Span(Kind kind, String name, Span parent, Latencies latencies) {
+            this.kind = kind;
+            this.name = name;
+            this.latencies = latencies;
+            if (parent != null) {
+                parent.children.add(this);
+            }
+        }
+
+        void started() {
+            startedAt = System.nanoTime();
+            state = "RUNNING";
+        }
+
+        // Only the first end counts: join and then close both end a scope.
+        void finished(String state) {
+            if (endedAt == 0) {
+                endedAt = System.nanoTime();
+                this.state = startedAt == 0 ? "NOT_STARTED" : state;
+            }
+        }
+
+        public Kind kind() {
+            return kind;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public String state() {
+            return state;
+        }
+
+        public List<Span> children() {
+            return List.copyOf(children);
+        }
+
+        // Fork to start: time spent waiting for a thread
+        public long queuedNanos() {
+            return startedAt == 0 ? 0 : startedAt - forkedAt;
+        }
+
+        public long runNanos() {
+            return startedAt == 0 ? 0 : end() - startedAt;
+        }
+
+        public long totalNanos() {
+            return end() - forkedAt;
+        }
+
+        // Still running: now; never started: the fork time, so it takes no room on the critical path
+        private long end() {
+            if (startedAt == 0) {
+                return forkedAt;
+            }
+            return endedAt == 0 ? System.nanoTime() : endedAt;
+        }
+
+        /**
+         * The chain of spans that decided this span's duration: below a scope the subtask that
+         * finished last, below a subtask or request the longest scope it opened.
+         */
+        public List<Span> criticalPath() {
+            List<Span> path = new ArrayList<>();
+            for (Span span = this; span != null; span = span.criticalChild()) {
+                path.add(span);
+            }
+            return path;
+        }
+
+        private Span criticalChild() {
+            Comparator<Span> order = kind == Kind.SCOPE
+                    ? Comparator.comparingLong(Span::end)
+                    : Comparator.comparingLong(Span::totalNanos);
+            return children.stream().max(order).orElse(null);
+        }
+
+        // The span tree as indented text, critical-path spans marked with '*'.
+        public String render() {
+            StringBuilder out = new StringBuilder();
+            render(out, 0, criticalPath());
+            return out.toString();
+        }
+
+        private void render(StringBuilder out, int depth, List<Span> critical) {
+            out.append(String.format("%s%-" + Math.max(1, 40 - 2 * depth) + "s %-7s %10.3f ms  queued %8.3f ms  %-11s%s%n",
+                    "  ".repeat(depth), name, kind, runNanos() / 1e6, queuedNanos() / 1e6, state,
+                    critical.contains(this) ? " *" : ""));
+            for (Span child : children) {
+                child.render(out, depth + 1, critical);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return kind + " " + name + " " + state + " " + runNanos() / 1_000 + " us";
+        }
+    }
+
+    @Name("structured.Subtask")
+    @Label("Subtask")
+    @Category("Structured Concurrency")
+    static final class SubtaskEvent extends Event {
+        @Label("Scope")
+        String scope;
+
+        @Label("Task")
+        String task;
+
+        @Label("Queued")
+        @Timespan
+        long queued;
+
+        @Label("State")
+        String state;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Latencies latencies = new Latencies(100);
+        for (int i = 0; i < 3; i++) {
+            TracedScope.trace("order-" + i, latencies, TracedScope::placeOrder, span -> System.out.print(span.render()));
+            System.out.println();
+        }
+        latencies.byName().forEach((task, histogram) -> System.out.println(task + ": " + histogram));
+    }
+
+    private static String placeOrder() throws InterruptedException {
+        try (var scope = TracedScope.open("placeOrder", StructuredTaskScope.Joiner.<String>allSuccessfulOrThrow())) {
+            scope.fork("user", () -> sleep("user", 20));
+            scope.fork("inventory", () -> {
+                try (var nested = TracedScope.open("warehouses", StructuredTaskScope.Joiner.<String>anySuccessfulResultOrThrow())) {
+                    nested.fork("east", () -> sleep("east", 60));
+                    nested.fork("west", () -> sleep("west", 30));
+                    return nested.join();
+                }
+            });
+            scope.fork("pricing", () -> sleep("pricing", 40));
+            scope.join();
+            return "placed";
+        }
+    }
+
+    private static String sleep(String name, long millis) throws InterruptedException {
+        TimeUnit.MILLISECONDS.sleep(millis);
+        return name;
+    }
+}